@@ -11,11 +11,13 @@ import java.nio.file.FileVisitResult;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.security.KeyPair;
 import java.security.interfaces.RSAPrivateKey;
 import java.security.interfaces.RSAPublicKey;
 import java.security.spec.InvalidKeySpecException;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
@@ -25,6 +27,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.zip.CRC32;
 import javax.script.Bindings;
@@ -36,6 +39,7 @@ import javax.script.ScriptException;
 import launcher.Launcher;
 import launcher.LauncherAPI;
 import launcher.client.ClientProfile;
+import launcher.hasher.HashIndex;
 import launcher.hasher.HashedDir;
 import launcher.helper.CommonHelper;
 import launcher.helper.IOHelper;
@@ -43,6 +47,7 @@ import launcher.helper.JVMHelper;
 import launcher.helper.LogHelper;
 import launcher.helper.SecurityHelper;
 import launcher.helper.VerifyHelper;
+import launcher.serialize.HInput;
 import launcher.serialize.config.ConfigObject;
 import launcher.serialize.config.TextConfigReader;
 import launcher.serialize.config.TextConfigWriter;
@@ -72,6 +77,13 @@ import launchserver.response.Response.Factory;
 import launchserver.response.ServerSocketHandler;
 import launchserver.response.ServerSocketHandler.Listener;
 import launchserver.texture.TextureProvider;
+import launchserver.update.BandwidthScheduler;
+import launchserver.update.CompressionPolicy;
+import launchserver.update.DeflateCache;
+import launchserver.update.GenerationStore;
+import launchserver.update.ObjectStore;
+import launchserver.update.UpdateGeneration;
+import launchserver.update.UpdatesWatcher;
 
 public final class LaunchServer implements Runnable, AutoCloseable {
     // Constant paths
@@ -80,12 +92,15 @@ public final class LaunchServer implements Runnable, AutoCloseable {
     @LauncherAPI public final Path publicKeyFile;
     @LauncherAPI public final Path privateKeyFile;
     @LauncherAPI public final Path updatesDir;
+    @LauncherAPI public final Path stagingDir;
     @LauncherAPI public final Path profilesDir;
+    @LauncherAPI public final Path cacheDir;
 
     // Server config
     @LauncherAPI public final Config config;
     @LauncherAPI public final RSAPublicKey publicKey;
     @LauncherAPI public final RSAPrivateKey privateKey;
+    @LauncherAPI public final byte[] keyFingerprint;
     @LauncherAPI public final boolean portable;
 
     // Launcher binary
@@ -95,12 +110,18 @@ public final class LaunchServer implements Runnable, AutoCloseable {
     // Server
     @LauncherAPI public final CommandHandler commandHandler;
     @LauncherAPI public final ServerSocketHandler serverSocketHandler;
+    @LauncherAPI public final DeflateCache deflateCache;
+    @LauncherAPI public final ObjectStore objectStore;
+    @LauncherAPI public final GenerationStore generationStore;
+    @LauncherAPI public final BandwidthScheduler bandwidthScheduler;
+    @LauncherAPI public final UpdatesWatcher updatesWatcher;
     @LauncherAPI public final ScriptEngine engine = CommonHelper.newScriptEngine();
     private final AtomicBoolean started = new AtomicBoolean(false);
 
     // Updates and profiles
     private volatile List<SignedObjectHolder<ClientProfile>> profilesList;
     private volatile Map<String, SignedObjectHolder<HashedDir>> updatesDirMap;
+    private final Map<String, UpdateGeneration> updateGenerations = new ConcurrentHashMap<>(16);
 
     public LaunchServer(Path dir, boolean portable) throws IOException, InvalidKeySpecException {
         setScriptBindings();
@@ -112,7 +133,9 @@ public final class LaunchServer implements Runnable, AutoCloseable {
         publicKeyFile = dir.resolve("public.key");
         privateKeyFile = dir.resolve("private.key");
         updatesDir = dir.resolve("updates");
+        stagingDir = dir.resolve("staging");
         profilesDir = dir.resolve("profiles");
+        cacheDir = dir.resolve("cache");
 
         // Set command handler
         CommandHandler localCommandHandler;
@@ -153,6 +176,7 @@ public final class LaunchServer implements Runnable, AutoCloseable {
         }
 
         // Print keypair fingerprints
+        keyFingerprint = SecurityHelper.getKeyFingerprint(publicKey);
         CRC32 crc = new CRC32();
         crc.update(publicKey.getModulus().toByteArray());
         LogHelper.subInfo("Modulus CRC32: 0x%08x", crc.getValue());
@@ -174,6 +198,15 @@ public final class LaunchServer implements Runnable, AutoCloseable {
         if (!IOHelper.isDir(updatesDir)) {
             Files.createDirectory(updatesDir);
         }
+        deflateCache = config.compress && config.compressCacheSize > 0 ?
+            new DeflateCache(cacheDir.resolve("deflate"), config.compressCacheSize << 20) : null;
+        objectStore = config.objectStore ? new ObjectStore(dir.resolve("objects")) : null;
+        generationStore = config.updateGenerations > 0 ?
+            new GenerationStore(cacheDir.resolve("generations"), config.updateGenerations) : null;
+        Path retiredDir = cacheDir.resolve("retired");
+        if (IOHelper.isDir(retiredDir)) { // Left by killed server, no sessions pin them now
+            IOHelper.deleteDir(retiredDir, true);
+        }
         syncUpdatesDir(null);
 
         // Sync profiles dir
@@ -181,6 +214,8 @@ public final class LaunchServer implements Runnable, AutoCloseable {
             Files.createDirectory(profilesDir);
         }
         syncProfilesDir();
+        updatesWatcher = config.watchUpdates ? new UpdatesWatcher(this) : null;
+        bandwidthScheduler = new BandwidthScheduler((long) config.bandwidth << 10, config.bandwidthReserve);
 
         // Set server socket thread
         serverSocketHandler = new ServerSocketHandler(this);
@@ -189,6 +224,13 @@ public final class LaunchServer implements Runnable, AutoCloseable {
     @Override
     public void close() {
         serverSocketHandler.close();
+        if (updatesWatcher != null) {
+            try {
+                updatesWatcher.close();
+            } catch (IOException e) {
+                LogHelper.error(e);
+            }
+        }
 
         // Close handlers & providers
         try {
@@ -242,6 +284,10 @@ public final class LaunchServer implements Runnable, AutoCloseable {
             JVMHelper.RUNTIME.addShutdownHook(CommonHelper.newThread(null, false, this::close));
             CommonHelper.newThread("Command Thread", true, commandHandler).start();
         }
+        if (updatesWatcher != null) {
+            CommonHelper.newThread("Updates Watcher Thread", true, updatesWatcher).start();
+        }
+        CommonHelper.newThread("Bandwidth Scheduler Thread", true, bandwidthScheduler).start();
         rebindServerSocket();
     }
 
@@ -275,12 +321,63 @@ public final class LaunchServer implements Runnable, AutoCloseable {
         }
     }
 
+    @LauncherAPI
+    public UpdateGeneration pinUpdateDir(String name) {
+        while (true) {
+            UpdateGeneration generation = updateGenerations.get(name);
+            if (generation == null || generation.pin()) {
+                return generation;
+            }
+            // Reclaimed right before pinning, so new one is already set
+        }
+    }
+
+    @LauncherAPI
+    public synchronized void publishUpdateDir(String name) throws IOException {
+        Path stagedDir = stagingDir.resolve(IOHelper.verifyFileName(name));
+        if (!IOHelper.isDir(stagedDir)) {
+            throw new IOException(String.format("Staged update dir not found: '%s'", stagedDir));
+        }
+
+        // Hash staged dir before swap (renaming keeps file keys, so index stays valid)
+        LogHelper.info("Publishing '%s' update dir", name);
+        HashIndex index = new HashIndex();
+        HashedDir stagedHDir = new HashedDir(stagedDir, null, true, true, index);
+
+        // Move live dir away, pinned sessions will continue from retired location
+        Path updateDir = updatesDir.resolve(name);
+        if (IOHelper.exists(updateDir)) {
+            Path retiredDir = cacheDir.resolve("retired").resolve(name + '-' + System.currentTimeMillis());
+            Files.createDirectories(retiredDir.getParent());
+            UpdateGeneration generation = updateGenerations.get(name);
+            if (generation != null) {
+                generation.moveTo(retiredDir);
+            } else {
+                Files.move(updateDir, retiredDir, StandardCopyOption.ATOMIC_MOVE);
+                IOHelper.deleteDir(retiredDir, true);
+            }
+        }
+        Files.move(stagedDir, updateDir, StandardCopyOption.ATOMIC_MOVE);
+        writeHashIndex(name, index);
+
+        // Set new generation
+        setUpdateDir(name, stagedHDir);
+        LogHelper.subInfo("Published '%s' update dir", name);
+    }
+
     @LauncherAPI
     public void rebindServerSocket() {
         serverSocketHandler.close();
         CommonHelper.newThread("Server Socket Thread", false, serverSocketHandler).start();
     }
 
+    @LauncherAPI
+    public synchronized void setUpdateDir(String name, HashedDir hdir) throws IOException {
+        Map<String, SignedObjectHolder<HashedDir>> newUpdatesDirMap = new HashMap<>(updatesDirMap);
+        newUpdatesDirMap.put(name, new SignedObjectHolder<>(hdir, privateKey));
+        setUpdatesDirMap(newUpdatesDirMap);
+    }
+
     @LauncherAPI
     public void syncLauncherBinaries() throws IOException {
         LogHelper.info("Syncing launcher binaries");
@@ -311,6 +408,11 @@ public final class LaunchServer implements Runnable, AutoCloseable {
 
     @LauncherAPI
     public void syncUpdatesDir(Collection<String> dirs) throws IOException {
+        syncUpdatesDir(dirs, false);
+    }
+
+    @LauncherAPI
+    public synchronized void syncUpdatesDir(Collection<String> dirs, boolean verifyAll) throws IOException {
         LogHelper.info("Syncing updates dir");
         Map<String, SignedObjectHolder<HashedDir>> newUpdatesDirMap = new HashMap<>(16);
         try (DirectoryStream<Path> dirStream = Files.newDirectoryStream(updatesDir)) {
@@ -337,11 +439,17 @@ public final class LaunchServer implements Runnable, AutoCloseable {
 
                 // Sync and sign update dir
                 LogHelper.subInfo("Syncing '%s' update dir", name);
-                HashedDir updateHDir = new HashedDir(updateDir, null, true, true);
+                HashIndex index = verifyAll ? new HashIndex() : readHashIndex(name);
+                if (objectStore != null && !verifyAll) { // Reuse digests of files linked to store
+                    index.setShared(objectStore.getIndex());
+                }
+                HashedDir updateHDir = new HashedDir(updateDir, null, true, true, index);
+                index.sweep();
+                writeHashIndex(name, index);
                 newUpdatesDirMap.put(name, new SignedObjectHolder<>(updateHDir, privateKey));
             }
         }
-        updatesDirMap = Collections.unmodifiableMap(newUpdatesDirMap);
+        setUpdatesDirMap(newUpdatesDirMap);
     }
 
     private void generateConfigIfNotExists() throws IOException {
@@ -372,6 +480,19 @@ public final class LaunchServer implements Runnable, AutoCloseable {
         }
     }
 
+    private HashIndex readHashIndex(String name) {
+        Path file = cacheDir.resolve("hashes").resolve(name + ".bin");
+        if (!IOHelper.isFile(file)) {
+            return new HashIndex();
+        }
+        try (HInput input = new HInput(IOHelper.read(file))) {
+            return new HashIndex(input);
+        } catch (IOException e) {
+            LogHelper.error(e);
+            return new HashIndex(); // Corrupted, rehash everything
+        }
+    }
+
     private void setScriptBindings() {
         LogHelper.info("Setting up server script engine bindings");
         Bindings bindings = engine.getBindings(ScriptContext.ENGINE_SCOPE);
@@ -382,6 +503,60 @@ public final class LaunchServer implements Runnable, AutoCloseable {
         addLaunchServerClassBindings(engine, bindings);
     }
 
+    private void setUpdatesDirMap(Map<String, SignedObjectHolder<HashedDir>> newUpdatesDirMap) throws IOException {
+        // Precompute delta manifests before clients can see new generations
+        if (generationStore != null) {
+            for (Entry<String, SignedObjectHolder<HashedDir>> entry : newUpdatesDirMap.entrySet()) {
+                generationStore.publish(entry.getKey(), entry.getValue().object);
+            }
+            generationStore.retain(newUpdatesDirMap.keySet());
+        }
+        updatesDirMap = Collections.unmodifiableMap(newUpdatesDirMap);
+        setUpdateGenerations(newUpdatesDirMap);
+
+        // Drop cached blobs and store objects of changed files
+        if (deflateCache != null) {
+            deflateCache.retain(newUpdatesDirMap.values());
+        }
+        if (objectStore != null) {
+            objectStore.retain(newUpdatesDirMap.values());
+        }
+    }
+
+    private void setUpdateGenerations(Map<String, SignedObjectHolder<HashedDir>> newUpdatesDirMap) {
+        for (Entry<String, SignedObjectHolder<HashedDir>> entry : newUpdatesDirMap.entrySet()) {
+            String name = entry.getKey();
+            Path updateDir = updatesDir.resolve(name);
+            UpdateGeneration generation = updateGenerations.get(name);
+            if (generation != null && updateDir.equals(generation.getDir()) &&
+                Arrays.equals(generation.hdir.object.getHash(), entry.getValue().object.getHash())) {
+                continue; // Same content in live dir, keep pinned sessions on current generation
+            }
+
+            // Retire old generation, it'll be reclaimed after last session
+            updateGenerations.put(name, new UpdateGeneration(name, entry.getValue(), updateDir));
+            if (generation != null) {
+                generation.retire();
+            }
+        }
+
+        // Retire generations of removed update dirs
+        updateGenerations.values().removeIf(generation -> {
+            if (newUpdatesDirMap.containsKey(generation.name)) {
+                return false;
+            }
+            generation.retire();
+            return true;
+        });
+    }
+
+    private void writeHashIndex(String name, HashIndex index) throws IOException {
+        Path file = cacheDir.resolve("hashes").resolve(name + ".bin");
+        Path tempFile = file.resolveSibling(name + ".bin.tmp");
+        IOHelper.write(tempFile, index.write());
+        Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING);
+    }
+
     public static void main(String... args) throws Throwable {
         SecurityHelper.verifyCertificates(LaunchServer.class);
         JVMHelper.verifySystemProperties(LaunchServer.class, true);
@@ -456,9 +631,26 @@ public final class LaunchServer implements Runnable, AutoCloseable {
         @LauncherAPI public final AuthProvider authProvider;
         @LauncherAPI public final TextureProvider textureProvider;
 
+        // Network options
+        @LauncherAPI public final boolean nioEngine;
+        @LauncherAPI public final int nioThreads;
+        @LauncherAPI public final int nioWorkers;
+        @LauncherAPI public final boolean virtualThreads;
+        @LauncherAPI public final int maxSessions;
+        @LauncherAPI public final int maxClientSessions;
+        @LauncherAPI public final int maxUpdateClients;
+        @LauncherAPI public final int maxUpdateConnections;
+        @LauncherAPI public final int bandwidth;
+        @LauncherAPI public final int bandwidthReserve;
+
         // Misc options
         @LauncherAPI public final boolean launch4J;
         @LauncherAPI public final boolean compress;
+        @LauncherAPI public final long compressCacheSize;
+        @LauncherAPI public final CompressionPolicy compressPolicy;
+        @LauncherAPI public final boolean objectStore;
+        @LauncherAPI public final int updateGenerations;
+        @LauncherAPI public final boolean watchUpdates;
         private final StringConfigEntry address;
         private final String bindAddress;
 
@@ -478,9 +670,37 @@ public final class LaunchServer implements Runnable, AutoCloseable {
             textureProvider = TextureProvider.newProvider(block.getEntryValue("textureProvider", StringConfigEntry.class),
                 block.getEntry("textureProviderConfig", BlockConfigEntry.class));
 
+            // Set network config
+            nioEngine = block.hasEntry("nioEngine") && block.getEntryValue("nioEngine", BooleanConfigEntry.class);
+            nioThreads = block.hasEntry("nioThreads") ? VerifyHelper.verifyInt(block.getEntryValue("nioThreads", IntegerConfigEntry.class),
+                VerifyHelper.POSITIVE, "Illegal NIO threads count") : 2;
+            nioWorkers = block.hasEntry("nioWorkers") ? VerifyHelper.verifyInt(block.getEntryValue("nioWorkers", IntegerConfigEntry.class),
+                VerifyHelper.POSITIVE, "Illegal NIO workers count") : 64;
+            virtualThreads = block.hasEntry("virtualThreads") && block.getEntryValue("virtualThreads", BooleanConfigEntry.class);
+            maxSessions = block.hasEntry("maxSessions") ? VerifyHelper.verifyInt(block.getEntryValue("maxSessions", IntegerConfigEntry.class),
+                VerifyHelper.NOT_NEGATIVE, "Illegal max sessions count") : 256;
+            maxClientSessions = block.hasEntry("maxClientSessions") ? VerifyHelper.verifyInt(block.getEntryValue("maxClientSessions", IntegerConfigEntry.class),
+                VerifyHelper.NOT_NEGATIVE, "Illegal max client sessions count") : 8;
+            maxUpdateClients = block.hasEntry("maxUpdateClients") ? VerifyHelper.verifyInt(block.getEntryValue("maxUpdateClients", IntegerConfigEntry.class),
+                VerifyHelper.NOT_NEGATIVE, "Illegal max update clients count") : 32;
+            maxUpdateConnections = block.hasEntry("maxUpdateConnections") ? VerifyHelper.verifyInt(block.getEntryValue("maxUpdateConnections", IntegerConfigEntry.class),
+                VerifyHelper.NOT_NEGATIVE, "Illegal max update connections count") : 4;
+            bandwidth = block.hasEntry("bandwidth") ? VerifyHelper.verifyInt(block.getEntryValue("bandwidth", IntegerConfigEntry.class),
+                VerifyHelper.NOT_NEGATIVE, "Illegal bandwidth limit") : 0;
+            bandwidthReserve = block.hasEntry("bandwidthReserve") ? VerifyHelper.verifyInt(block.getEntryValue("bandwidthReserve", IntegerConfigEntry.class),
+                VerifyHelper.range(0, 99), "Illegal bandwidth reserve percent") : 10;
+
             // Set misc config
             launch4J = block.getEntryValue("launch4J", BooleanConfigEntry.class);
             compress = block.getEntryValue("compress", BooleanConfigEntry.class);
+            compressCacheSize = block.hasEntry("compressCacheSize") ? VerifyHelper.verifyInt(block.getEntryValue("compressCacheSize", IntegerConfigEntry.class),
+                VerifyHelper.NOT_NEGATIVE, "Illegal compress cache size") : 1024;
+            compressPolicy = new CompressionPolicy(block.hasEntry("compressPolicy") ?
+                block.getEntry("compressPolicy", BlockConfigEntry.class) : new BlockConfigEntry(0));
+            objectStore = block.hasEntry("objectStore") && block.getEntryValue("objectStore", BooleanConfigEntry.class);
+            updateGenerations = block.hasEntry("updateGenerations") ? VerifyHelper.verifyInt(block.getEntryValue("updateGenerations", IntegerConfigEntry.class),
+                VerifyHelper.NOT_NEGATIVE, "Illegal update generations count") : 4;
+            watchUpdates = block.hasEntry("watchUpdates") && block.getEntryValue("watchUpdates", BooleanConfigEntry.class);
         }
 
         @LauncherAPI
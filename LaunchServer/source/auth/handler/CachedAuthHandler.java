@@ -1,10 +1,10 @@
 package launchserver.auth.handler;
 
 import java.io.IOException;
-import java.util.HashMap;
 import java.util.Map;
 import java.util.Objects;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 
 import launcher.LauncherAPI;
 import launcher.helper.CommonHelper;
@@ -14,56 +14,77 @@ import launcher.serialize.config.entry.BlockConfigEntry;
 import launchserver.auth.provider.AuthProviderResult;
 
 public abstract class CachedAuthHandler extends AuthHandler {
-    private final Map<UUID, Entry> entryCache = new HashMap<>(1024);
-    private final Map<String, UUID> usernamesCache = new HashMap<>(1024);
+    private static final int FETCH_STRIPES = 64; // Power of 2
+
+    // Instance
+    private final Map<UUID, Entry> entryCache = new ConcurrentHashMap<>(1024);
+    private final Map<String, UUID> usernamesCache = new ConcurrentHashMap<>(1024);
+    private final Object[] fetchLocks = new Object[FETCH_STRIPES]; // Misses of different users are fetched in parallel
 
     @LauncherAPI
     protected CachedAuthHandler(BlockConfigEntry block) {
         super(block);
+        for (int i = 0; i < fetchLocks.length; i++) {
+            fetchLocks[i] = new Object();
+        }
     }
 
     @Override
-    public final synchronized UUID auth(AuthProviderResult result) throws IOException {
+    public final UUID auth(AuthProviderResult result) throws IOException {
         Entry entry = getEntry(result.username);
-        if (entry == null || !updateAuth(entry.uuid, entry.username, result.accessToken)) {
+        if (entry == null) {
             return authError(String.format("UUID is null for username '%s'", result.username));
         }
 
-        // Update cached access token (and username case)
-        entry.username = result.username;
-        entry.accessToken = result.accessToken;
-        entry.serverID = null;
+        // Update cached access token (and username case), so entry matches DB for other threads
+        synchronized (entry) {
+            if (!updateAuth(entry.uuid, entry.username, result.accessToken)) {
+                return authError(String.format("UUID is null for username '%s'", result.username));
+            }
+            entry.username = result.username;
+            entry.accessToken = result.accessToken;
+            entry.serverID = null;
+        }
         return entry.uuid;
     }
 
     @Override
-    public final synchronized UUID checkServer(String username, String serverID) throws IOException {
+    public final UUID checkServer(String username, String serverID) throws IOException {
         Entry entry = getEntry(username);
-        return entry != null && username.equals(entry.username) &&
-            serverID.equals(entry.serverID) ? entry.uuid : null;
+        if (entry == null) {
+            return null;
+        }
+        synchronized (entry) {
+            return username.equals(entry.username) && serverID.equals(entry.serverID) ? entry.uuid : null;
+        }
     }
 
     @Override
-    public final synchronized boolean joinServer(String username, String accessToken, String serverID) throws IOException {
+    public final boolean joinServer(String username, String accessToken, String serverID) throws IOException {
         Entry entry = getEntry(username);
-        if (entry == null || !username.equals(entry.username) || !accessToken.equals(entry.accessToken) ||
-            !updateServerID(entry.uuid, serverID)) {
-            return false; // Account doesn't exist or invalid access token
+        if (entry == null) {
+            return false; // Account doesn't exist
         }
+        synchronized (entry) {
+            if (!username.equals(entry.username) || !accessToken.equals(entry.accessToken) ||
+                !updateServerID(entry.uuid, serverID)) {
+                return false; // Invalid access token
+            }
 
-        // Update cached server ID
-        entry.serverID = serverID;
+            // Update cached server ID
+            entry.serverID = serverID;
+        }
         return true;
     }
 
     @Override
-    public final synchronized UUID usernameToUUID(String username) throws IOException {
+    public final UUID usernameToUUID(String username) throws IOException {
         Entry entry = getEntry(username);
         return entry == null ? null : entry.uuid;
     }
 
     @Override
-    public final synchronized String uuidToUsername(UUID uuid) throws IOException {
+    public final String uuidToUsername(UUID uuid) throws IOException {
         Entry entry = getEntry(uuid);
         return entry == null ? null : entry.username;
     }
@@ -82,45 +103,77 @@ public abstract class CachedAuthHandler extends AuthHandler {
 
     @LauncherAPI
     protected void addEntry(Entry entry) {
+        String username = CommonHelper.low(entry.username);
         Entry previous = entryCache.put(entry.uuid, entry);
+        usernamesCache.put(username, entry.uuid);
         if (previous != null) { // In case of username changing
-            usernamesCache.remove(CommonHelper.low(previous.username));
+            String previousUsername = CommonHelper.low(previous.username);
+            if (!previousUsername.equals(username)) {
+                usernamesCache.remove(previousUsername, entry.uuid);
+            }
         }
-        usernamesCache.put(CommonHelper.low(entry.username), entry.uuid);
+    }
+
+    private Entry cacheEntry(Entry entry) {
+        Entry cached = entryCache.putIfAbsent(entry.uuid, entry);
+        if (cached == null) {
+            usernamesCache.put(CommonHelper.low(entry.username), entry.uuid);
+            return entry;
+        }
+
+        // Fetched by other key meanwhile, keep cached one (it may be already updated)
+        if (CommonHelper.low(cached.username).equals(CommonHelper.low(entry.username))) {
+            return cached;
+        }
+        addEntry(entry);
+        return entry;
     }
 
     private Entry getEntry(UUID uuid) throws IOException {
         Entry entry = entryCache.get(uuid);
-        if (entry == null) {
-            entry = fetchEntry(uuid);
+        if (entry != null) {
+            return entry;
+        }
+
+        // Fetch entry by UUID (once, if other thread is fetching it)
+        synchronized (getFetchLock(uuid)) {
+            entry = entryCache.get(uuid);
             if (entry != null) {
-                addEntry(entry);
+                return entry;
             }
+            entry = fetchEntry(uuid);
+            return entry == null ? null : cacheEntry(entry);
         }
-        return entry;
     }
 
     private Entry getEntry(String username) throws IOException {
-        UUID uuid = usernamesCache.get(CommonHelper.low(username));
+        String key = CommonHelper.low(username);
+        UUID uuid = usernamesCache.get(key);
         if (uuid != null) {
             return getEntry(uuid);
         }
 
-        // Fetch entry by username
-        Entry entry = fetchEntry(username);
-        if (entry != null) {
-            addEntry(entry);
+        // Fetch entry by username (UUID lock may be taken inside, never vice versa)
+        synchronized (getFetchLock(key)) {
+            uuid = usernamesCache.get(key);
+            if (uuid != null) {
+                return getEntry(uuid);
+            }
+            Entry entry = fetchEntry(username);
+            return entry == null ? null : cacheEntry(entry);
         }
+    }
 
-        // Return what we got
-        return entry;
+    private Object getFetchLock(Object key) {
+        int hash = key.hashCode();
+        return fetchLocks[(hash ^ hash >>> 16) & FETCH_STRIPES - 1];
     }
 
     public static final class Entry {
         @LauncherAPI public final UUID uuid;
-        private String username;
-        private String accessToken;
-        private String serverID;
+        private volatile String username;
+        private volatile String accessToken;
+        private volatile String serverID;
 
         @LauncherAPI
         public Entry(UUID uuid, String username, String accessToken, String serverID) {
@@ -0,0 +1,149 @@
+package launchserver.command.auth;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntFunction;
+
+import launcher.helper.CommonHelper;
+import launcher.helper.LogHelper;
+import launcher.helper.VerifyHelper;
+import launcher.serialize.config.entry.BlockConfigEntry;
+import launchserver.LaunchServer;
+import launchserver.auth.handler.CachedAuthHandler;
+import launchserver.command.Command;
+
+public final class BenchAuthCommand extends Command {
+    private static final int DEFAULT_THREADS = 64;
+    private static final int DEFAULT_DELAY = 20; // ms
+    private static final int HIT_ROUNDS = 10000;
+
+    public BenchAuthCommand(LaunchServer server) {
+        super(server);
+    }
+
+    @Override
+    public String getArgsDescription() {
+        return "[threads] [delay ms]";
+    }
+
+    @Override
+    public String getUsageDescription() {
+        return "Measure CachedAuthHandler contention against slow fake backend";
+    }
+
+    @Override
+    public void invoke(String... args) throws Throwable {
+        int threads = args.length > 0 ? VerifyHelper.verifyInt(Integer.parseInt(args[0]),
+            VerifyHelper.POSITIVE, "Threads count should be positive") : DEFAULT_THREADS;
+        int delay = args.length > 1 ? VerifyHelper.verifyInt(Integer.parseInt(args[1]),
+            VerifyHelper.NOT_NEGATIVE, "Delay can't be negative") : DEFAULT_DELAY;
+
+        // Run benchmarks
+        ExecutorService executor = Executors.newFixedThreadPool(threads,
+            r -> CommonHelper.newThread("Bench Auth Thread", true, r));
+        try (DelayedAuthHandler handler = new DelayedAuthHandler(delay);
+            DelayedAuthHandler sameHandler = new DelayedAuthHandler(delay)) {
+            bench("distinct", executor, threads, 1, handler, i -> "Player" + i);
+            bench("same", executor, threads, 1, sameHandler, i -> "Player");
+            bench("hits", executor, threads, HIT_ROUNDS, handler, i -> "Player" + i); // Already cached
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static void bench(String name, ExecutorService executor, int threads, int rounds,
+        DelayedAuthHandler handler, IntFunction<String> usernames) throws Throwable {
+        handler.reset();
+        CountDownLatch start = new CountDownLatch(1);
+        Future<?>[] futures = new Future<?>[threads];
+        for (int i = 0; i < threads; i++) {
+            String username = usernames.apply(i);
+            futures[i] = executor.submit(() -> {
+                start.await();
+                for (int j = 0; j < rounds; j++) {
+                    if (handler.usernameToUUID(username) == null) {
+                        throw new IOException("Unknown username: " + username);
+                    }
+                }
+                return null;
+            });
+        }
+
+        // Start all threads at once and wait for them
+        long startTime = System.nanoTime();
+        start.countDown();
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        double millis = (System.nanoTime() - startTime) / 1.0e6D;
+
+        // Print results
+        int duplicates = 0;
+        for (AtomicInteger count : handler.fetches.values()) {
+            duplicates += count.get() - 1;
+        }
+        LogHelper.subInfo("%-8s lookups: %d, fetches: %d (%d duplicate, max %d parallel), time: %.1f ms",
+            name, threads * rounds, handler.fetches.size() + duplicates, duplicates, handler.maxParallel.get(), millis);
+    }
+
+    private static final class DelayedAuthHandler extends CachedAuthHandler {
+        private final int delay;
+        private final Map<String, AtomicInteger> fetches = new ConcurrentHashMap<>(64);
+        private final AtomicInteger parallel = new AtomicInteger(0);
+        private final AtomicInteger maxParallel = new AtomicInteger(0);
+
+        private DelayedAuthHandler(int delay) {
+            super(new BlockConfigEntry(0));
+            this.delay = delay;
+        }
+
+        @Override
+        public void close() {
+            // Do nothing
+        }
+
+        @Override
+        protected Entry fetchEntry(UUID uuid) throws IOException {
+            throw new IOException("Fetch by UUID isn't benchmarked");
+        }
+
+        @Override
+        protected Entry fetchEntry(String username) throws IOException {
+            fetches.computeIfAbsent(CommonHelper.low(username), k -> new AtomicInteger(0)).incrementAndGet();
+            maxParallel.accumulateAndGet(parallel.incrementAndGet(), Math::max);
+            try {
+                Thread.sleep(delay); // Slow backend
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException(e);
+            } finally {
+                parallel.decrementAndGet();
+            }
+            UUID uuid = UUID.nameUUIDFromBytes(username.getBytes(StandardCharsets.UTF_8));
+            return new Entry(uuid, username, null, null);
+        }
+
+        @Override
+        protected boolean updateAuth(UUID uuid, String username, String accessToken) {
+            return true;
+        }
+
+        @Override
+        protected boolean updateServerID(UUID uuid, String serverID) {
+            return true;
+        }
+
+        private void reset() {
+            fetches.clear();
+            maxParallel.set(0);
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package launchserver.command.basic;
+
+import launcher.helper.LogHelper;
+import launcher.helper.VerifyHelper;
+import launchserver.LaunchServer;
+import launchserver.command.Command;
+import launchserver.update.BandwidthScheduler;
+
+public final class BandwidthCommand extends Command {
+    private static final double KIB = 1 << 10;
+    private static final double MIB = 1 << 20;
+
+    public BandwidthCommand(LaunchServer server) {
+        super(server);
+    }
+
+    @Override
+    public String getArgsDescription() {
+        return "[limit KiB/s]";
+    }
+
+    @Override
+    public String getUsageDescription() {
+        return "Print update sessions bandwidth or change limit";
+    }
+
+    @Override
+    public void invoke(String... args) {
+        BandwidthScheduler scheduler = server.bandwidthScheduler;
+        if (args.length >= 1) {
+            long newLimit = VerifyHelper.verifyLong(Long.parseLong(args[0]), VerifyHelper.L_NOT_NEGATIVE, "Illegal bandwidth limit");
+            scheduler.setLimit(newLimit << 10);
+        }
+
+        // Print limit
+        long limit = scheduler.getLimit();
+        if (limit > 0L) {
+            LogHelper.subInfo("Limit: %.1f KiB/s (%.1f KiB/s for updates)", limit / KIB, scheduler.getUpdatesLimit() / KIB);
+        } else {
+            LogHelper.subInfo("Limit: unlimited");
+        }
+
+        // Print sessions
+        double totalRate = 0.0D;
+        long now = System.currentTimeMillis();
+        for (BandwidthScheduler.Session session : scheduler.getSessions()) {
+            double rate = session.getRate();
+            totalRate += rate;
+            LogHelper.subInfo("%s '%s': %.1f KiB/s, %.2f MiB sent, %ds",
+                session.address == null ? "local" : session.address.getHostAddress(), session.dirName,
+                rate / KIB, session.getWritten() / MIB, (now - session.startTime) / 1000L);
+        }
+        LogHelper.subInfo("Total: %.1f KiB/s (%d sessions)", totalRate / KIB, scheduler.getSessions().size());
+    }
+}
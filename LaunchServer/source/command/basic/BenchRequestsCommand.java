@@ -0,0 +1,216 @@
+package launchserver.command.basic;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.UUID;
+import java.util.concurrent.FutureTask;
+
+import launcher.Launcher;
+import launcher.client.PlayerProfile;
+import launcher.client.PlayerProfile.Texture;
+import launcher.helper.CommonHelper;
+import launcher.helper.IOHelper;
+import launcher.helper.LogHelper;
+import launcher.helper.SecurityHelper;
+import launcher.helper.SecurityHelper.DigestAlgorithm;
+import launcher.helper.VerifyHelper;
+import launcher.request.Request.Type;
+import launcher.serialize.HInput;
+import launcher.serialize.HOutput;
+import launcher.serialize.stream.EnumSerializer;
+import launchserver.LaunchServer;
+import launchserver.command.Command;
+
+public final class BenchRequestsCommand extends Command {
+    private static final int DEFAULT_ROUNDS = 10000;
+
+    public BenchRequestsCommand(LaunchServer server) {
+        super(server);
+    }
+
+    @Override
+    public String getArgsDescription() {
+        return "[rounds]";
+    }
+
+    @Override
+    public String getUsageDescription() {
+        return "Measure syscalls and latency per AUTH and CHECK_SERVER round trip over loopback";
+    }
+
+    @Override
+    public void invoke(String... args) throws Throwable {
+        int rounds = args.length > 0 ? VerifyHelper.verifyInt(Integer.parseInt(args[0]),
+            VerifyHelper.POSITIVE, "Rounds count should be positive") : DEFAULT_ROUNDS;
+
+        // Prepare sample frames
+        byte[] encryptedPassword = new byte[SecurityHelper.RSA_KEY_LENGTH];
+        String accessToken = SecurityHelper.randomStringToken();
+        String serverID = SecurityHelper.randomStringToken();
+        PlayerProfile profile = new PlayerProfile(UUID.randomUUID(), "Username",
+            new Texture("http://skins.minecraft.net/Username.png", new byte[DigestAlgorithm.SHA256.bytes]), null);
+        Frame authRequest = output -> {
+            output.writeString("Username", 255);
+            output.writeByteArray(encryptedPassword, SecurityHelper.CRYPTO_MAX_LENGTH);
+        };
+        Frame authResponse = output -> {
+            profile.write(output);
+            output.writeASCII(accessToken, -SecurityHelper.TOKEN_STRING_LENGTH);
+        };
+        Frame checkServerRequest = output -> {
+            output.writeString("Username", 64);
+            output.writeASCII(serverID, 41);
+        };
+        Frame checkServerResponse = output -> {
+            output.writeBoolean(true);
+            profile.write(output);
+        };
+
+        // Run benchmarks (each stream call on socket is a syscall)
+        for (boolean buffered : new boolean[] { false, true }) {
+            bench(buffered, "auth", Type.AUTH, rounds, authRequest, input -> {
+                input.readString(255);
+                input.readByteArray(SecurityHelper.CRYPTO_MAX_LENGTH);
+            }, authResponse, input -> {
+                new PlayerProfile(input);
+                input.readASCII(-SecurityHelper.TOKEN_STRING_LENGTH);
+            });
+            bench(buffered, "checkServer", Type.CHECK_SERVER, rounds, checkServerRequest, input -> {
+                input.readString(64);
+                input.readASCII(41);
+            }, checkServerResponse, input -> {
+                input.readBoolean();
+                new PlayerProfile(input);
+            });
+        }
+    }
+
+    private void bench(boolean buffered, String name, Type type, int rounds,
+        Frame request, Reader requestReader, Frame response, Reader responseReader) throws Throwable {
+        try (ServerSocket serverSocket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+            // Serve round trips like ResponseThread does
+            FutureTask<Long> serverTask = new FutureTask<>(() -> {
+                try (Socket socket = serverSocket.accept()) {
+                    socket.setTcpNoDelay(true);
+                    CountingInput counterInput = new CountingInput(socket.getInputStream());
+                    CountingOutput counterOutput = new CountingOutput(socket.getOutputStream());
+                    HInput input = newInput(counterInput, buffered);
+                    HOutput output = newOutput(counterOutput, buffered);
+                    for (int i = 0; i < rounds; i++) {
+                        input.readInt();
+                        input.readByteArray(SecurityHelper.RSA_KEY_LENGTH + 1);
+                        Type.read(input);
+                        output.writeBoolean(true);
+                        output.flush();
+
+                        // Read request and write response
+                        requestReader.read(input);
+                        output.writeString("", 0); // No error
+                        response.write(output);
+                        output.flush();
+                    }
+                    return counterInput.calls + counterOutput.calls;
+                }
+            });
+            CommonHelper.newThread("Bench Server Thread", true, serverTask).start();
+
+            // Do round trips like Request does
+            long clientCalls;
+            long startTime;
+            try (Socket socket = new Socket(serverSocket.getInetAddress(), serverSocket.getLocalPort())) {
+                socket.setTcpNoDelay(true);
+                CountingInput counterInput = new CountingInput(socket.getInputStream());
+                CountingOutput counterOutput = new CountingOutput(socket.getOutputStream());
+                HInput input = newInput(counterInput, buffered);
+                HOutput output = newOutput(counterOutput, buffered);
+                startTime = System.nanoTime();
+                for (int i = 0; i < rounds; i++) {
+                    output.writeInt(Launcher.PROTOCOL_MAGIC);
+                    output.writeByteArray(server.keyFingerprint, SecurityHelper.RSA_KEY_LENGTH + 1);
+                    EnumSerializer.write(output, type);
+                    output.flush();
+                    input.readBoolean();
+
+                    // Write request and read response
+                    request.write(output);
+                    output.flush();
+                    input.readString(0);
+                    responseReader.read(input);
+                }
+                clientCalls = counterInput.calls + counterOutput.calls;
+            }
+            double micros = (System.nanoTime() - startTime) / 1.0e3D / rounds;
+            long calls = clientCalls + serverTask.get();
+
+            // Print results
+            LogHelper.subInfo("%-8s %-11s syscalls: %.1f, latency: %.1f us per round trip",
+                buffered ? "buffered" : "raw", name, (double) calls / rounds, micros);
+        }
+    }
+
+    private static HInput newInput(InputStream input, boolean buffered) {
+        return new HInput(buffered ? new BufferedInputStream(input, IOHelper.BUFFER_SIZE) : input);
+    }
+
+    private static HOutput newOutput(OutputStream output, boolean buffered) {
+        return new HOutput(buffered ? new BufferedOutputStream(output, IOHelper.BUFFER_SIZE) : output);
+    }
+
+    @FunctionalInterface
+    private interface Frame {
+        void write(HOutput output) throws IOException;
+    }
+
+    @FunctionalInterface
+    private interface Reader {
+        void read(HInput input) throws IOException;
+    }
+
+    private static final class CountingInput extends FilterInputStream {
+        private long calls;
+
+        private CountingInput(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            calls++;
+            return in.read();
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            calls++;
+            return in.read(b, off, len);
+        }
+    }
+
+    private static final class CountingOutput extends FilterOutputStream {
+        private long calls;
+
+        private CountingOutput(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            calls++;
+            out.write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            calls++;
+            out.write(b, off, len);
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package launchserver.command.basic;
+
+import launcher.helper.LogHelper;
+import launchserver.LaunchServer;
+import launchserver.command.Command;
+
+public final class NetworkThreadsCommand extends Command {
+    public NetworkThreadsCommand(LaunchServer server) {
+        super(server);
+    }
+
+    @Override
+    public String getArgsDescription() {
+        return null;
+    }
+
+    @Override
+    public String getUsageDescription() {
+        return "Print connection threads usage";
+    }
+
+    @Override
+    public void invoke(String... args) {
+        int mounted = server.serverSocketHandler.getMountedTasks();
+        int parked = server.serverSocketHandler.getParkedTasks();
+        LogHelper.subInfo("Threads: %s", server.serverSocketHandler.isVirtualThreads() ? "virtual" : "platform");
+        LogHelper.subInfo("Tasks: %d mounted, %d parked (%d total)", mounted, parked, mounted + parked);
+    }
+}
@@ -16,10 +16,13 @@ import launchserver.LaunchServer;
 import launchserver.command.Command;
 import launchserver.command.CommandException;
 import launchserver.command.auth.AuthCommand;
+import launchserver.command.auth.BenchAuthCommand;
 import launchserver.command.auth.CheckServerCommand;
 import launchserver.command.auth.JoinServerCommand;
 import launchserver.command.auth.UUIDToUsernameCommand;
 import launchserver.command.auth.UsernameToUUIDCommand;
+import launchserver.command.basic.BandwidthCommand;
+import launchserver.command.basic.BenchRequestsCommand;
 import launchserver.command.basic.BuildCommand;
 import launchserver.command.basic.ClearCommand;
 import launchserver.command.basic.DebugCommand;
@@ -27,16 +30,21 @@ import launchserver.command.basic.EvalCommand;
 import launchserver.command.basic.GCCommand;
 import launchserver.command.basic.HelpCommand;
 import launchserver.command.basic.LogConnectionsCommand;
+import launchserver.command.basic.NetworkThreadsCommand;
 import launchserver.command.basic.RebindCommand;
 import launchserver.command.basic.StopCommand;
 import launchserver.command.basic.VersionCommand;
+import launchserver.command.hash.BenchCompressCommand;
+import launchserver.command.hash.DedupUpdatesCommand;
 import launchserver.command.hash.DownloadAssetCommand;
 import launchserver.command.hash.DownloadClientCommand;
 import launchserver.command.hash.IndexAssetCommand;
+import launchserver.command.hash.PublishUpdateCommand;
 import launchserver.command.hash.SyncBinariesCommand;
 import launchserver.command.hash.SyncProfilesCommand;
 import launchserver.command.hash.SyncUpdatesCommand;
 import launchserver.command.hash.UnindexAssetCommand;
+import launchserver.command.hash.VerifyUpdatesCommand;
 import launchserver.command.legacy.DumpBinaryAuthHandler;
 
 public abstract class CommandHandler implements Runnable {
@@ -54,6 +62,9 @@ public abstract class CommandHandler implements Runnable {
         registerCommand("eval", new EvalCommand(server));
         registerCommand("gc", new GCCommand(server));
         registerCommand("logConnections", new LogConnectionsCommand(server));
+        registerCommand("networkThreads", new NetworkThreadsCommand(server));
+        registerCommand("bandwidth", new BandwidthCommand(server));
+        registerCommand("benchRequests", new BenchRequestsCommand(server));
 
         // Register sync commands
         registerCommand("indexAsset", new IndexAssetCommand(server));
@@ -62,6 +73,10 @@ public abstract class CommandHandler implements Runnable {
         registerCommand("downloadClient", new DownloadClientCommand(server));
         registerCommand("syncBinaries", new SyncBinariesCommand(server));
         registerCommand("syncUpdates", new SyncUpdatesCommand(server));
+        registerCommand("verifyUpdates", new VerifyUpdatesCommand(server));
+        registerCommand("dedupUpdates", new DedupUpdatesCommand(server));
+        registerCommand("publishUpdate", new PublishUpdateCommand(server));
+        registerCommand("benchCompress", new BenchCompressCommand(server));
         registerCommand("syncProfiles", new SyncProfilesCommand(server));
 
         // Register auth commands
@@ -70,6 +85,7 @@ public abstract class CommandHandler implements Runnable {
         registerCommand("checkServer", new CheckServerCommand(server));
         registerCommand("usernameToUUID", new UsernameToUUIDCommand(server));
         registerCommand("uuidToUsername", new UUIDToUsernameCommand(server));
+        registerCommand("benchAuth", new BenchAuthCommand(server));
 
         // Register legacy commands
         registerCommand("dumpBinaryAuthHandler", new DumpBinaryAuthHandler(server));
@@ -0,0 +1,127 @@
+package launchserver.command.hash;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.zip.Deflater;
+
+import launcher.hasher.HashedDir;
+import launcher.hasher.HashedEntry;
+import launcher.hasher.HashedFile;
+import launcher.helper.IOHelper;
+import launcher.helper.LogHelper;
+import launcher.serialize.signed.SignedObjectHolder;
+import launchserver.LaunchServer;
+import launchserver.command.Command;
+import launchserver.command.CommandException;
+import launchserver.update.CompressionPolicy;
+import launchserver.update.CompressionPolicy.Codec;
+
+public final class BenchCompressCommand extends Command {
+    private static final double GIB = 1 << 30;
+    private static final double MIB = 1 << 20;
+
+    public BenchCompressCommand(LaunchServer server) {
+        super(server);
+    }
+
+    @Override
+    public String getArgsDescription() {
+        return "<dir>";
+    }
+
+    @Override
+    public String getUsageDescription() {
+        return "Measure compression CPU per GiB served for update dir";
+    }
+
+    @Override
+    public void invoke(String... args) throws Throwable {
+        verifyArgs(args, 1);
+        String dirName = IOHelper.verifyFileName(args[0]);
+        SignedObjectHolder<HashedDir> hdir = server.getUpdateDir(dirName);
+        if (hdir == null) {
+            throw new CommandException(String.format("Unknown update dir: '%s'", dirName));
+        }
+
+        // Collect files
+        Map<Path, HashedFile> files = new LinkedHashMap<>(256);
+        collectFiles(server.updatesDir.resolve(dirName), hdir.object, files);
+        LogHelper.subInfo("Benchmarking %d files (%.2f MiB)", files.size(), hdir.object.size() / MIB);
+
+        // Run policies (whole dir as single update stream)
+        CompressionPolicy policy = server.config.compressPolicy;
+        for (Codec codec : Codec.values()) {
+            bench(codec.name().toLowerCase(Locale.ROOT), files, (file, hFile) -> codec);
+        }
+        bench("policy", files, policy::getCodec);
+    }
+
+    private static void bench(String name, Map<Path, HashedFile> files, CodecSelector selector) throws IOException {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        long startCPU = threads.getCurrentThreadCpuTime();
+        long startTime = System.nanoTime();
+
+        // Deflate files to nowhere
+        long inputSize = 0L;
+        long outputSize = 0L;
+        byte[] buffer = IOHelper.newBuffer();
+        byte[] deflated = IOHelper.newBuffer();
+        Deflater deflater = IOHelper.newDeflater();
+        try {
+            for (Entry<Path, HashedFile> entry : files.entrySet()) {
+                selector.select(entry.getKey(), entry.getValue()).apply(deflater);
+                try (InputStream input = IOHelper.newInput(entry.getKey())) {
+                    for (int length = input.read(buffer); length >= 0; length = input.read(buffer)) {
+                        inputSize += length;
+                        deflater.setInput(buffer, 0, length);
+                        while (!deflater.needsInput()) {
+                            outputSize += deflater.deflate(deflated, 0, deflated.length, Deflater.NO_FLUSH);
+                        }
+                    }
+                }
+                int length;
+                do { // Each file ends with flush, like in update stream
+                    length = deflater.deflate(deflated, 0, deflated.length, Deflater.SYNC_FLUSH);
+                    outputSize += length;
+                } while (length == deflated.length);
+            }
+        } finally {
+            deflater.end();
+        }
+
+        // Print results
+        double cpuSeconds = (threads.getCurrentThreadCpuTime() - startCPU) / 1.0e9D;
+        double seconds = (System.nanoTime() - startTime) / 1.0e9D;
+        LogHelper.subInfo("%-8s CPU: %.2fs (%.2fs/GiB), wall: %.2fs, output: %.2f MiB (%.1f%%)", name,
+            cpuSeconds, inputSize == 0L ? 0.0D : cpuSeconds / (inputSize / GIB), seconds,
+            outputSize / MIB, inputSize == 0L ? 100.0D : outputSize * 100.0D / inputSize);
+    }
+
+    private static void collectFiles(Path dir, HashedDir hdir, Map<Path, HashedFile> files) {
+        for (Entry<String, HashedEntry> entry : hdir.map().entrySet()) {
+            Path path = dir.resolve(entry.getKey());
+            switch (entry.getValue().getType()) {
+                case FILE:
+                    files.put(path, (HashedFile) entry.getValue());
+                    break;
+                case DIR:
+                    collectFiles(path, (HashedDir) entry.getValue(), files);
+                    break;
+                default:
+                    throw new AssertionError("Unsupported hashed entry type: " + entry.getValue().getType().name());
+            }
+        }
+    }
+
+    @FunctionalInterface
+    private interface CodecSelector {
+        Codec select(Path file, HashedFile hFile) throws IOException;
+    }
+}
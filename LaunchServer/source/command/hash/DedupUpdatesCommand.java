@@ -0,0 +1,67 @@
+package launchserver.command.hash;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map.Entry;
+import java.util.Set;
+
+import launcher.hasher.HashedDir;
+import launcher.helper.LogHelper;
+import launcher.serialize.signed.SignedObjectHolder;
+import launchserver.LaunchServer;
+import launchserver.command.Command;
+import launchserver.command.CommandException;
+import launchserver.update.ObjectStore;
+
+public final class DedupUpdatesCommand extends Command {
+    private static final double MIB = 1 << 20;
+
+    public DedupUpdatesCommand(LaunchServer server) {
+        super(server);
+    }
+
+    @Override
+    public String getArgsDescription() {
+        return "[subdirs...]";
+    }
+
+    @Override
+    public String getUsageDescription() {
+        return "Replace identical update files with links to object store";
+    }
+
+    @Override
+    public void invoke(String... args) throws Throwable {
+        ObjectStore store = server.objectStore;
+        if (store == null) {
+            throw new CommandException("Object store is disabled in LaunchServer config");
+        }
+        Set<String> dirs = null;
+        if (args.length > 0) { // Dedup all updates dirs
+            dirs = new HashSet<>(args.length);
+            Collections.addAll(dirs, args);
+        }
+
+        // Rehash changed files first, so we'll link up-to-date content only
+        server.syncUpdatesDir(dirs);
+
+        // Link files to store
+        long totalReclaimed = 0L;
+        for (Entry<String, SignedObjectHolder<HashedDir>> entry : server.getUpdateDirs()) {
+            String name = entry.getKey();
+            if (dirs != null && !dirs.contains(name)) {
+                continue;
+            }
+            long reclaimed;
+            try {
+                reclaimed = store.dedup(server.updatesDir.resolve(name), entry.getValue().object);
+            } catch (IOException e) { // Different file system, no hardlinks support, etc.
+                throw new CommandException(String.format("Can't dedup '%s' update dir: %s", name, e));
+            }
+            totalReclaimed += reclaimed;
+            LogHelper.subInfo("Deduplicated '%s': %.2f MiB reclaimed", name, reclaimed / MIB);
+        }
+        LogHelper.subInfo("Total: %.2f MiB reclaimed", totalReclaimed / MIB);
+    }
+}
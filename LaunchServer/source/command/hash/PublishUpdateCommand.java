@@ -0,0 +1,36 @@
+package launchserver.command.hash;
+
+import java.io.IOException;
+
+import launcher.helper.IOHelper;
+import launchserver.LaunchServer;
+import launchserver.command.Command;
+import launchserver.command.CommandException;
+
+public final class PublishUpdateCommand extends Command {
+    public PublishUpdateCommand(LaunchServer server) {
+        super(server);
+    }
+
+    @Override
+    public String getArgsDescription() {
+        return "<dir>";
+    }
+
+    @Override
+    public String getUsageDescription() {
+        return "Replace update dir with staged one, without breaking active downloads";
+    }
+
+    @Override
+    public void invoke(String... args) throws IOException, CommandException {
+        verifyArgs(args, 1);
+        String dirName = IOHelper.verifyFileName(args[0]);
+        if (!IOHelper.isDir(server.stagingDir.resolve(dirName))) {
+            throw new CommandException(String.format("Staged update dir not found: '%s'", dirName));
+        }
+
+        // Swap dirs, old one is kept until its sessions end
+        server.publishUpdateDir(dirName);
+    }
+}
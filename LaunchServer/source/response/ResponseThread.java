@@ -1,5 +1,7 @@
 package launchserver.response;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.IOException;
 import java.math.BigInteger;
 import java.net.Socket;
@@ -22,6 +24,7 @@ import launchserver.response.profile.BatchProfileByUsernameResponse;
 import launchserver.response.profile.ProfileByUUIDResponse;
 import launchserver.response.profile.ProfileByUsernameResponse;
 import launchserver.response.update.LauncherResponse;
+import launchserver.response.update.UpdateCheckResponse;
 import launchserver.response.update.UpdateListResponse;
 import launchserver.response.update.UpdateResponse;
 
@@ -29,11 +32,17 @@ public final class ResponseThread implements Runnable {
     private final LaunchServer server;
     private final long id;
     private final Socket socket;
+    private final Type handshakeType;
 
     public ResponseThread(LaunchServer server, long id, Socket socket) throws SocketException {
+        this(server, id, socket, null);
+    }
+
+    /*package*/ ResponseThread(LaunchServer server, long id, Socket socket, Type handshakeType) throws SocketException {
         this.server = server;
         this.id = id;
         this.socket = socket;
+        this.handshakeType = handshakeType;
 
         // Fix socket flags
         IOHelper.setSocketFlags(socket);
@@ -48,12 +57,18 @@ public final class ResponseThread implements Runnable {
         // Process connection
         boolean cancelled = false;
         Throwable savedError = null;
-        try (HInput input = new HInput(socket.getInputStream());
-            HOutput output = new HOutput(socket.getOutputStream())) {
-            Type type = readHandshake(input, output);
-            if (type == null) { // Not accepted
-                cancelled = true;
-                return;
+        try (HInput input = new HInput(new BufferedInputStream(socket.getInputStream(), IOHelper.BUFFER_SIZE));
+            HOutput output = new HOutput(new BufferedOutputStream(socket.getOutputStream(), IOHelper.BUFFER_SIZE))) {
+            Type type = handshakeType;
+            if (type == null) {
+                type = readHandshake(server, id, input, output);
+                if (type == null) { // Not accepted
+                    cancelled = true;
+                    return;
+                }
+            } else { // Already verified by selector loop
+                output.writeBoolean(true);
+                output.flush();
             }
 
             // Start response
@@ -74,12 +89,13 @@ public final class ResponseThread implements Runnable {
         }
     }
 
-    private Type readHandshake(HInput input, HOutput output) throws IOException {
+    /*package*/ static Type readHandshake(LaunchServer server, long id, HInput input, HOutput output) throws IOException {
         boolean legacy = false;
 
         // Verify magic number
         int magicNumber = input.readInt();
-        if (magicNumber != Launcher.PROTOCOL_MAGIC) {
+        boolean session = magicNumber == Launcher.SESSION_MAGIC;
+        if (!session && magicNumber != Launcher.PROTOCOL_MAGIC) {
             if (magicNumber != Launcher.PROTOCOL_MAGIC - 1) { // Previous launcher protocol
                 output.writeBoolean(false);
                 throw new IOException(String.format("#%d Protocol magic mismatch", id));
@@ -87,11 +103,24 @@ public final class ResponseThread implements Runnable {
             legacy = true;
         }
 
-        // Verify key modulus
-        BigInteger keyModulus = input.readBigInteger(SecurityHelper.RSA_KEY_LENGTH + 1);
-        if (!keyModulus.equals(server.privateKey.getModulus())) {
-            output.writeBoolean(false);
-            throw new IOException(String.format("#%d Key modulus mismatch", id));
+        // Verify key fingerprint or modulus (legacy)
+        int keyLength = input.readLength(SecurityHelper.RSA_KEY_LENGTH + 1);
+        if (keyLength == SecurityHelper.KEY_FINGERPRINT_LENGTH) {
+            int diff = 0;
+            for (byte b : server.keyFingerprint) {
+                diff |= input.readUnsignedByte() ^ b & 0xFF;
+            }
+            if (diff != 0) {
+                output.writeBoolean(false);
+                throw new IOException(String.format("#%d Key fingerprint mismatch", id));
+            }
+        } else {
+            byte[] keyModulus = new byte[keyLength];
+            IOHelper.read(input.stream, keyModulus);
+            if (!new BigInteger(keyModulus).equals(server.privateKey.getModulus())) {
+                output.writeBoolean(false);
+                throw new IOException(String.format("#%d Key modulus mismatch", id));
+            }
         }
 
         // Read request type
@@ -100,6 +129,10 @@ public final class ResponseThread implements Runnable {
             output.writeBoolean(false);
             throw new IOException(String.format("#%d Not LAUNCHER request on legacy protocol", id));
         }
+        if (session != (type == Type.SESSION)) {
+            output.writeBoolean(false);
+            throw new IOException(String.format("#%d Session protocol and request type mismatch", id));
+        }
         if (!server.serverSocketHandler.onHandshake(id, type)) {
             output.writeBoolean(false);
             return null;
@@ -111,7 +144,7 @@ public final class ResponseThread implements Runnable {
         return type;
     }
 
-    private void respond(Type type, HInput input, HOutput output) throws Throwable {
+    /*package*/ void respond(Type type, HInput input, HOutput output) throws Throwable {
         if (server.serverSocketHandler.logConnections) {
             LogHelper.info("Connection #%d from %s: %s", id, IOHelper.getIP(socket.getRemoteSocketAddress()), type.name());
         } else {
@@ -137,11 +170,14 @@ public final class ResponseThread implements Runnable {
                 response = new LauncherResponse(server, id, input, output);
                 break;
             case UPDATE:
-                response = new UpdateResponse(server, id, input, output);
+                response = new UpdateResponse(server, id, input, output, socket);
                 break;
             case UPDATE_LIST:
                 response = new UpdateListResponse(server, id, input, output);
                 break;
+            case UPDATE_CHECK:
+                response = new UpdateCheckResponse(server, id, input, output);
+                break;
             case PROFILE_BY_USERNAME:
                 response = new ProfileByUsernameResponse(server, id, input, output);
                 break;
@@ -151,6 +187,9 @@ public final class ResponseThread implements Runnable {
             case BATCH_PROFILE_BY_USERNAME:
                 response = new BatchProfileByUsernameResponse(server, id, input, output);
                 break;
+            case SESSION:
+                response = new SessionResponse(server, id, input, output, this, socket);
+                break;
             case CUSTOM:
                 String name = VerifyHelper.verifyIDName(input.readASCII(255));
                 response = server.serverSocketHandler.newCustomResponse(name, id, input, output);
@@ -0,0 +1,268 @@
+package launchserver.response;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+
+import launcher.helper.IOHelper;
+import launcher.helper.LogHelper;
+import launcher.helper.SecurityHelper;
+import launcher.request.Request.Type;
+import launcher.serialize.HInput;
+import launcher.serialize.HOutput;
+import launchserver.LaunchServer;
+
+/*package*/ final class SelectorLoop implements Runnable, AutoCloseable {
+    private static final long SELECT_TIMEOUT = 1000L;
+    private static final int MAX_VARINT_LENGTH = 5;
+    private static final int MAX_KEY_LENGTH = SecurityHelper.RSA_KEY_LENGTH + 1;
+    private static final int MAX_HANDSHAKE_LENGTH = Integer.BYTES + MAX_VARINT_LENGTH + MAX_KEY_LENGTH + MAX_VARINT_LENGTH;
+
+    // Instance
+    private final LaunchServer server;
+    private final Selector selector;
+    private final Queue<Connection> pending = new ConcurrentLinkedQueue<>();
+    private final List<Connection> handoff = new ArrayList<>(16); // Accepted in current select round
+
+    /*package*/ SelectorLoop(LaunchServer server) throws IOException {
+        this.server = server;
+        selector = Selector.open();
+    }
+
+    @Override
+    public void close() {
+        try {
+            for (SelectionKey key : selector.keys()) {
+                IOHelper.close(key.channel());
+            }
+        } catch (ClosedSelectorException ignored) {
+            // Already closed
+        }
+        IOHelper.close(selector);
+
+        // Close not yet registered connections
+        for (Connection connection = pending.poll(); connection != null; connection = pending.poll()) {
+            IOHelper.close(connection.channel);
+        }
+    }
+
+    @Override
+    public void run() {
+        try {
+            while (selector.isOpen()) {
+                selector.select(SELECT_TIMEOUT);
+                registerPending();
+
+                // Process ready connections
+                Iterator<SelectionKey> iterator = selector.selectedKeys().iterator();
+                while (iterator.hasNext()) {
+                    SelectionKey key = iterator.next();
+                    iterator.remove();
+                    try {
+                        if (key.isValid() && key.isReadable()) {
+                            processRead(key);
+                        }
+                    } catch (RuntimeException e) { // Don't let one connection kill selector thread
+                        disconnect(key, e);
+                    }
+                }
+
+                // Hand off accepted connections (selected keys set isn't iterated anymore)
+                if (!handoff.isEmpty()) {
+                    selector.selectNow(); // Deregister cancelled channels
+                    for (Connection connection : handoff) {
+                        handOff(connection);
+                    }
+                    handoff.clear();
+                }
+
+                // Drop connections that are stuck in handshake
+                closeExpired();
+            }
+        } catch (ClosedSelectorException ignored) {
+            // Closed on rebind
+        } catch (IOException e) {
+            if (selector.isOpen()) {
+                LogHelper.error(e);
+            }
+        }
+    }
+
+    /*package*/ void register(SocketChannel channel, long id) {
+        pending.add(new Connection(channel, id));
+        selector.wakeup();
+    }
+
+    private void closeExpired() {
+        long now = System.currentTimeMillis();
+        for (SelectionKey key : selector.keys()) {
+            Connection connection = (Connection) key.attachment();
+            if (key.isValid() && now - connection.start >= IOHelper.SOCKET_TIMEOUT) {
+                disconnect(key, new SocketTimeoutException(String.format("#%d Handshake timed out", connection.id)));
+            }
+        }
+    }
+
+    private void disconnect(SelectionKey key, Throwable exc) {
+        Connection connection = (Connection) key.attachment();
+        key.cancel();
+        IOHelper.close(connection.channel);
+
+        // Notify the same way as ResponseThread does
+        LogHelper.error(exc);
+        server.serverSocketHandler.onDisconnect(connection.id, exc);
+    }
+
+    private void dispatch(SelectionKey key, int length) throws IOException {
+        Connection connection = (Connection) key.attachment();
+        if (connection.buffer.position() > length) {
+            throw new IOException(String.format("#%d Unexpected data after handshake", connection.id));
+        }
+
+        // Verify handshake (captured output will contain 'not accepted' reply)
+        ByteArrayOutputStream reply = IOHelper.newByteArrayOutput();
+        Type type;
+        try (HInput input = new HInput(Arrays.copyOf(connection.buffer.array(), length));
+            HOutput output = new HOutput(reply)) {
+            type = ResponseThread.readHandshake(server, connection.id, input, output);
+        } catch (IOException e) {
+            reject(connection, reply.toByteArray());
+            throw e;
+        }
+        if (type == null) { // Not accepted by listener
+            key.cancel();
+            reject(connection, reply.toByteArray());
+            IOHelper.close(connection.channel);
+            return;
+        }
+
+        // Channel can be switched to blocking mode only after deregistration
+        key.cancel();
+        connection.type = type;
+        handoff.add(connection);
+    }
+
+    private void handOff(Connection connection) {
+        try {
+            connection.channel.configureBlocking(true);
+            ResponseThread thread = new ResponseThread(server, connection.id, connection.channel.socket(), connection.type);
+            if (connection.type == Type.SESSION) {
+                server.serverSocketHandler.executeSession(thread, connection.channel.socket().getInetAddress());
+            } else {
+                server.serverSocketHandler.execute(thread);
+            }
+        } catch (RejectedExecutionException e) {
+            reject(connection, new byte[] { 0b0 });
+            IOHelper.close(connection.channel);
+            server.serverSocketHandler.onDisconnect(connection.id, e);
+            LogHelper.warning("#%d Rejected, %s", connection.id, connection.type == Type.SESSION ?
+                "too many sessions" : "all network workers are busy");
+        } catch (IOException | RuntimeException e) {
+            IOHelper.close(connection.channel);
+            LogHelper.error(e);
+            server.serverSocketHandler.onDisconnect(connection.id, e);
+        }
+    }
+
+    private void processRead(SelectionKey key) {
+        Connection connection = (Connection) key.attachment();
+        try {
+            if (connection.channel.read(connection.buffer) < 0) {
+                throw new EOFException(String.format("#%d Connection closed during handshake", connection.id));
+            }
+
+            // Dispatch if whole handshake was received
+            int length = getHandshakeLength(connection.buffer);
+            if (length >= 0) {
+                dispatch(key, length);
+            }
+        } catch (Throwable exc) {
+            disconnect(key, exc);
+        }
+    }
+
+    private void registerPending() {
+        for (Connection connection = pending.poll(); connection != null; connection = pending.poll()) {
+            try {
+                connection.channel.register(selector, SelectionKey.OP_READ, connection);
+            } catch (IOException e) {
+                IOHelper.close(connection.channel);
+                LogHelper.error(e);
+                server.serverSocketHandler.onDisconnect(connection.id, e);
+            }
+        }
+    }
+
+    private static int getHandshakeLength(ByteBuffer buffer) {
+        int limit = buffer.position();
+        if (!buffer.hasRemaining()) {
+            return limit; // Malformed, let HInput report it
+        }
+
+        // Magic number and key length
+        int offset = Integer.BYTES;
+        int keyLength = 0;
+        for (int shift = 0; ; shift += 7) {
+            if (offset >= limit) {
+                return -1;
+            }
+            int b = buffer.get(offset++);
+            keyLength |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                break;
+            }
+            if (shift >= Integer.SIZE - 7) {
+                return limit; // Malformed, let HInput report it
+            }
+        }
+        if (keyLength < 0 || keyLength > MAX_KEY_LENGTH) {
+            return limit; // Malformed, let HInput report it
+        }
+
+        // Key and request type
+        offset += keyLength;
+        for (int i = 0; i < MAX_VARINT_LENGTH; i++) {
+            if (offset >= limit) {
+                return -1;
+            }
+            if ((buffer.get(offset++) & 0x80) == 0) {
+                return offset;
+            }
+        }
+        return limit; // Malformed, let HInput report it
+    }
+
+    private void reject(Connection connection, byte[] reply) {
+        try {
+            connection.channel.write(ByteBuffer.wrap(reply));
+        } catch (IOException ignored) {
+            // Best effort, connection will be closed anyway
+        }
+    }
+
+    private static final class Connection {
+        private final SocketChannel channel;
+        private final long id;
+        private final long start = System.currentTimeMillis();
+        private final ByteBuffer buffer = ByteBuffer.allocate(MAX_HANDSHAKE_LENGTH);
+        private Type type; // Set when handshake is accepted
+
+        private Connection(SocketChannel channel, long id) {
+            this.channel = channel;
+            this.id = id;
+        }
+    }
+}
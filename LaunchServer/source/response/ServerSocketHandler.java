@@ -1,15 +1,26 @@
 package launchserver.response;
 
 import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.net.InetAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.HashMap;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
 
@@ -30,7 +41,12 @@ public final class ServerSocketHandler implements Runnable, AutoCloseable {
     // Instance
     private final LaunchServer server;
     private final AtomicReference<ServerSocket> serverSocket = new AtomicReference<>();
-    private final ExecutorService threadPool = Executors.newCachedThreadPool(THREAD_FACTORY);
+    private final ExecutorService threadPool;
+    private final Set<Thread> taskThreads = ConcurrentHashMap.newKeySet();
+    private final Map<InetAddress, int[]> updateConnections = new HashMap<>(16); // Main and partition counts
+    private final Map<InetAddress, Integer> sessions = new HashMap<>(16);
+    private int sessionsCount;
+    private final boolean virtualThreads;
 
     // API
     private final Map<String, Factory> customResponses = new ConcurrentHashMap<>(2);
@@ -39,6 +55,21 @@ public final class ServerSocketHandler implements Runnable, AutoCloseable {
 
     public ServerSocketHandler(LaunchServer server) {
         this.server = server;
+
+        // Virtual threads, if requested and available
+        ExecutorService virtualPool = server.config.virtualThreads ? newVirtualThreadPool() : null;
+        virtualThreads = virtualPool != null;
+        if (virtualThreads) {
+            threadPool = virtualPool;
+        } else if (server.config.nioEngine) { // Bounded workers for NIO engine (selector loops reject overflow)
+            int workers = server.config.nioWorkers;
+            ThreadPoolExecutor pool = new ThreadPoolExecutor(workers, workers, 60L, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(workers * 4), THREAD_FACTORY);
+            pool.allowCoreThreadTimeOut(true);
+            threadPool = pool;
+        } else {
+            threadPool = Executors.newCachedThreadPool(THREAD_FACTORY);
+        }
     }
 
     @Override
@@ -57,17 +88,37 @@ public final class ServerSocketHandler implements Runnable, AutoCloseable {
     @Override
     public void run() {
         LogHelper.info("Starting server socket thread");
-        try (ServerSocket serverSocket = new ServerSocket()) {
-            if (!this.serverSocket.compareAndSet(null, serverSocket)) {
-                throw new IllegalStateException("Previous socket wasn't closed");
+        try {
+            if (server.config.nioEngine) {
+                listenSelector();
+            } else {
+                listenBlocking();
+            }
+        } catch (IOException e) {
+            // Ignore error after close/rebind
+            if (serverSocket.get() != null) {
+                LogHelper.error(e);
             }
+        }
+    }
+
+    private void bind(ServerSocket serverSocket) throws IOException {
+        if (!this.serverSocket.compareAndSet(null, serverSocket)) {
+            throw new IllegalStateException("Previous socket wasn't closed");
+        }
+
+        // Set socket params
+        serverSocket.setReuseAddress(true);
+        serverSocket.setPerformancePreferences(1, 0, 2);
+        //serverSocket.setReceiveBufferSize(0x10000);
+        serverSocket.bind(server.config.getSocketAddress());
+        LogHelper.info("Server socket thread successfully started");
+    }
 
-            // Set socket params
-            serverSocket.setReuseAddress(true);
-            serverSocket.setPerformancePreferences(1, 0, 2);
-            //serverSocket.setReceiveBufferSize(0x10000);
-            serverSocket.bind(server.config.getSocketAddress());
-            LogHelper.info("Server socket thread successfully started");
+    private void listenBlocking() throws IOException {
+        try (ServerSocketChannel channel = ServerSocketChannel.open()) {
+            ServerSocket serverSocket = channel.socket(); // Channel-backed sockets allow zero-copy
+            bind(serverSocket);
 
             // Listen for incoming connections
             while (serverSocket.isBound()) {
@@ -80,16 +131,96 @@ public final class ServerSocketHandler implements Runnable, AutoCloseable {
                 }
 
                 // Reply in separate thread
-                threadPool.execute(new ResponseThread(server, id, socket));
+                execute(new ResponseThread(server, id, socket));
             }
-        } catch (IOException e) {
-            // Ignore error after close/rebind
-            if (serverSocket.get() != null) {
-                LogHelper.error(e);
+        }
+    }
+
+    private void listenSelector() throws IOException {
+        SelectorLoop[] loops = new SelectorLoop[server.config.nioThreads];
+        try (ServerSocketChannel channel = ServerSocketChannel.open()) {
+            bind(channel.socket());
+
+            // Start selector loops
+            for (int i = 0; i < loops.length; i++) {
+                loops[i] = new SelectorLoop(server);
+                CommonHelper.newThread("Selector Thread", true, loops[i]).start();
+            }
+            LogHelper.subInfo("Using NIO engine: %d selectors, %s workers", loops.length,
+                virtualThreads ? "virtual" : Integer.toString(server.config.nioWorkers));
+
+            // Listen for incoming connections
+            for (int next = 0; channel.socket().isBound(); next = (next + 1) % loops.length) {
+                SocketChannel socketChannel = channel.accept();
+
+                // Invoke pre-connect listener
+                long id = idCounter.incrementAndGet();
+                if (listener != null && !listener.onConnect(id, socketChannel.socket().getInetAddress())) {
+                    socketChannel.close();
+                    continue; // Listener didn't accepted this connection
+                }
+
+                // Handshake will be read by selector loop
+                socketChannel.configureBlocking(false);
+                loops[next].register(socketChannel, id);
+            }
+        } finally {
+            for (SelectorLoop loop : loops) {
+                if (loop != null) {
+                    loop.close();
+                }
             }
         }
     }
 
+    @LauncherAPI
+    public synchronized boolean acquireUpdateConnection(InetAddress address, boolean partition) {
+        int[] counts = updateConnections.getOrDefault(address, new int[2]);
+        if (partition) {
+            // Partitions are allowed only for active main connections of this IP
+            int max = server.config.maxUpdateConnections;
+            if (counts[0] == 0 || max > 0 && counts[1] >= counts[0] * max) {
+                return false;
+            }
+        } else {
+            int max = server.config.maxUpdateClients;
+            if (max > 0 && counts[0] >= max) {
+                return false;
+            }
+        }
+        counts[partition ? 1 : 0]++;
+        updateConnections.put(address, counts);
+        return true;
+    }
+
+    @LauncherAPI
+    public int getMountedTasks() {
+        int mounted = 0;
+        for (Thread thread : taskThreads) {
+            if (thread.getState() == Thread.State.RUNNABLE) {
+                mounted++;
+            }
+        }
+        return mounted;
+    }
+
+    @LauncherAPI
+    public int getParkedTasks() {
+        int parked = 0;
+        for (Thread thread : taskThreads) {
+            Thread.State state = thread.getState();
+            if (state != Thread.State.RUNNABLE && state != Thread.State.TERMINATED) {
+                parked++;
+            }
+        }
+        return parked;
+    }
+
+    @LauncherAPI
+    public boolean isVirtualThreads() {
+        return virtualThreads;
+    }
+
     @LauncherAPI
     public Response newCustomResponse(String name, long id, HInput input, HOutput output) {
         Factory factory = VerifyHelper.getMapValue(customResponses, name,
@@ -104,11 +235,54 @@ public final class ServerSocketHandler implements Runnable, AutoCloseable {
             String.format("Custom response has been already registered: '%s'", name));
     }
 
+    @LauncherAPI
+    public synchronized void releaseUpdateConnection(InetAddress address, boolean partition) {
+        int[] counts = updateConnections.get(address);
+        if (counts != null) {
+            counts[partition ? 1 : 0]--;
+            if (counts[0] == 0 && counts[1] == 0) {
+                updateConnections.remove(address);
+            }
+        }
+    }
+
     @LauncherAPI
     public void setListener(Listener listener) {
         this.listener = listener;
     }
 
+    /*package*/ void execute(Runnable task) {
+        threadPool.execute(() -> runTask(task));
+    }
+
+    /*package*/ void executeSession(Runnable task, InetAddress address) {
+        if (!acquireSession(address)) {
+            throw new RejectedExecutionException("Too many sessions");
+        }
+        Runnable sessionTask = () -> {
+            try {
+                task.run();
+            } finally {
+                releaseSession(address);
+            }
+        };
+        try {
+            if (virtualThreads || !server.config.nioEngine) {
+                execute(sessionTask); // Pool isn't bounded
+                return;
+            }
+
+            // Idle session readers would hold bounded workers, so frames couldn't be replied
+            CommonHelper.newThread("Session Thread", true, () -> runTask(sessionTask)).start();
+        } catch (RejectedExecutionException e) {
+            releaseSession(address);
+            throw e;
+        } catch (OutOfMemoryError e) { // Can't create native thread
+            releaseSession(address);
+            throw new RejectedExecutionException(e);
+        }
+    }
+
     /*package*/ void onDisconnect(long id, Throwable exc) {
         if (listener != null) {
             listener.onDisconnect(id, exc);
@@ -119,6 +293,48 @@ public final class ServerSocketHandler implements Runnable, AutoCloseable {
         return listener == null || listener.onHandshake(id, type);
     }
 
+    private synchronized boolean acquireSession(InetAddress address) {
+        int count = sessions.getOrDefault(address, 0);
+        int max = server.config.maxSessions;
+        int maxClient = server.config.maxClientSessions;
+        if (max > 0 && sessionsCount >= max || maxClient > 0 && count >= maxClient) {
+            return false;
+        }
+        sessions.put(address, count + 1);
+        sessionsCount++;
+        return true;
+    }
+
+    private synchronized void releaseSession(InetAddress address) {
+        sessions.computeIfPresent(address, (k, count) -> count > 1 ? count - 1 : null);
+        sessionsCount--;
+    }
+
+    private void runTask(Runnable task) {
+        Thread thread = Thread.currentThread();
+        taskThreads.add(thread);
+        try {
+            task.run();
+        } finally {
+            taskThreads.remove(thread);
+        }
+    }
+
+    private static ExecutorService newVirtualThreadPool() {
+        try {
+            MethodHandle factory = MethodHandles.publicLookup().findStatic(Executors.class,
+                "newVirtualThreadPerTaskExecutor", MethodType.methodType(ExecutorService.class));
+            ExecutorService pool = (ExecutorService) factory.invokeExact();
+            LogHelper.subInfo("Using virtual threads for connections");
+            return pool;
+        } catch (NoSuchMethodException | IllegalAccessException e) {
+            LogHelper.warning("Virtual threads aren't available on this JVM, using platform threads");
+        } catch (Throwable exc) { // Preview feature not enabled, etc
+            LogHelper.warning("Virtual threads can't be used, using platform threads: %s", exc);
+        }
+        return null;
+    }
+
     public interface Listener {
         @LauncherAPI
         boolean onConnect(long id, InetAddress address);
@@ -0,0 +1,114 @@
+package launchserver.response;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+
+import launcher.helper.IOHelper;
+
+/*package*/ final class SessionChannel implements AutoCloseable {
+    // Socket adaptor streams share blocking lock on Java 8, so reads would block writes
+    private final SocketChannel channel;
+    private final Selector readSelector;
+    private final Selector writeSelector;
+    private final ByteBuffer prefix; // Read by handshake buffer, but not consumed yet
+
+    // Streams
+    /*package*/ final InputStream input = new ChannelInput();
+    /*package*/ final OutputStream output = new ChannelOutput();
+
+    /*package*/ SessionChannel(SocketChannel channel, byte[] prefix) throws IOException {
+        this.channel = channel;
+        this.prefix = ByteBuffer.wrap(prefix);
+
+        // Switch to non-blocking mode, so reader and writers don't share any lock
+        readSelector = Selector.open();
+        writeSelector = Selector.open();
+        try {
+            channel.configureBlocking(false);
+            channel.register(readSelector, SelectionKey.OP_READ);
+            channel.register(writeSelector, SelectionKey.OP_WRITE);
+        } catch (IOException e) {
+            close();
+            throw e;
+        }
+    }
+
+    @Override
+    public void close() {
+        IOHelper.close(readSelector);
+        IOHelper.close(writeSelector);
+    }
+
+    private int read(ByteBuffer buffer) throws IOException {
+        if (prefix.hasRemaining()) {
+            int length = Math.min(prefix.remaining(), buffer.remaining());
+            ByteBuffer slice = prefix.slice();
+            slice.limit(length);
+            buffer.put(slice);
+            prefix.position(prefix.position() + length);
+            return length;
+        }
+
+        // Wait for data until idle timeout
+        while (true) {
+            int length = channel.read(buffer);
+            if (length != 0) {
+                return length;
+            }
+            if (readSelector.select(IOHelper.SOCKET_TIMEOUT) == 0) {
+                throw new SocketTimeoutException("Session read timed out");
+            }
+            readSelector.selectedKeys().clear();
+        }
+    }
+
+    private void write(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.write(buffer) > 0) {
+                continue;
+            }
+
+            // Socket buffer is full, wait until client reads
+            if (writeSelector.select(IOHelper.SOCKET_TIMEOUT) == 0) {
+                throw new SocketTimeoutException("Session write timed out");
+            }
+            writeSelector.selectedKeys().clear();
+        }
+    }
+
+    private final class ChannelInput extends InputStream {
+        @Override
+        public int available() {
+            return prefix.remaining();
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            return read(b, 0, 1) < 0 ? -1 : b[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            return len == 0 ? 0 : SessionChannel.this.read(ByteBuffer.wrap(b, off, len));
+        }
+    }
+
+    private final class ChannelOutput extends OutputStream {
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] { (byte) b }, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            SessionChannel.this.write(ByteBuffer.wrap(b, off, len));
+        }
+    }
+}
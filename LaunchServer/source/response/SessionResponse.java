@@ -0,0 +1,125 @@
+package launchserver.response;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+
+import launcher.helper.IOHelper;
+import launcher.helper.LogHelper;
+import launcher.request.Request;
+import launcher.request.Request.Type;
+import launcher.request.RequestException;
+import launcher.serialize.HInput;
+import launcher.serialize.HOutput;
+import launchserver.LaunchServer;
+
+public final class SessionResponse extends Response {
+    private static final int MAX_IN_FLIGHT = 64;
+    private final ResponseThread thread;
+    private final Socket socket;
+    private final Semaphore inFlight = new Semaphore(MAX_IN_FLIGHT);
+
+    // Session streams
+    private HInput sessionInput;
+    private HOutput sessionOutput;
+
+    /*package*/ SessionResponse(LaunchServer server, long id, HInput input, HOutput output, ResponseThread thread, Socket socket) {
+        super(server, id, input, output);
+        this.thread = thread;
+        this.socket = socket;
+    }
+
+    @Override
+    public void reply() throws IOException, InterruptedException {
+        SocketChannel channel = socket.getChannel();
+        if (channel == null) { // Plain socket streams don't block each other
+            sessionInput = input;
+            sessionOutput = output;
+            readFrames();
+            return;
+        }
+
+        // Take over channel (keeping bytes buffered after handshake)
+        byte[] prefix = new byte[input.stream.available()];
+        IOHelper.read(input.stream, prefix);
+        try (SessionChannel sessionChannel = new SessionChannel(channel, prefix)) {
+            sessionInput = new HInput(new BufferedInputStream(sessionChannel.input, IOHelper.BUFFER_SIZE));
+            sessionOutput = new HOutput(new BufferedOutputStream(sessionChannel.output, IOHelper.BUFFER_SIZE));
+            readFrames();
+        }
+    }
+
+    private void readFrames() throws IOException, InterruptedException {
+        try {
+            while (true) {
+                int requestID;
+                try {
+                    requestID = sessionInput.readVarInt();
+                } catch (EOFException | SocketTimeoutException ignored) {
+                    debug("Session closed");
+                    break; // Closed by client or idle
+                }
+
+                // Read request frame
+                Type type = Type.read(sessionInput);
+                byte[] payload = sessionInput.readByteArray(0);
+                if (!Request.SESSION_TYPES.contains(type)) {
+                    throw new IOException(String.format("Request type not allowed in session: %s", type.name()));
+                }
+
+                // Reply in worker thread (or in this one if workers are busy)
+                inFlight.acquire();
+                Runnable task = () -> {
+                    try {
+                        respondFrame(requestID, type, payload);
+                    } finally {
+                        inFlight.release();
+                    }
+                };
+                try {
+                    server.serverSocketHandler.execute(task);
+                } catch (RejectedExecutionException ignored) {
+                    task.run();
+                }
+            }
+        } finally {
+            // Wait for in-flight replies before connection is closed
+            inFlight.acquire(MAX_IN_FLIGHT);
+        }
+    }
+
+    private void respondFrame(int requestID, Type type, byte[] payload) {
+        ByteArrayOutputStream reply = IOHelper.newByteArrayOutput();
+        try (HInput frameInput = new HInput(payload); HOutput frameOutput = new HOutput(reply)) {
+            try {
+                if (!server.serverSocketHandler.onHandshake(id, type)) {
+                    requestError("Serverside not accepted this request");
+                }
+                thread.respond(type, frameInput, frameOutput);
+            } catch (RequestException e) {
+                debug("Request error: %s", e.getMessage());
+                frameOutput.writeString(e.getMessage(), 0);
+            }
+        } catch (Throwable exc) {
+            LogHelper.error(exc); // Client will get truncated reply, same as closed connection
+        }
+
+        // Write reply frame
+        try {
+            synchronized (sessionOutput) {
+                sessionOutput.writeVarInt(requestID);
+                sessionOutput.writeByteArray(reply.toByteArray(), 0);
+                sessionOutput.flush();
+            }
+        } catch (IOException e) {
+            debug("Can't write reply: %s", e.getMessage());
+        }
+    }
+}
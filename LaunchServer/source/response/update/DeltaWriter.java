@@ -0,0 +1,110 @@
+package launchserver.response.update;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+
+import launcher.helper.IOHelper;
+import launcher.request.update.DeltaSignature;
+import launcher.serialize.HOutput;
+
+/*package*/ final class DeltaWriter {
+    private static final int MAX_LITERAL_LENGTH = 0x100000; // Let client report progress
+
+    // Instance
+    private final HOutput output;
+    private final DeltaSignature signature;
+    private final byte[] buffer = IOHelper.newBuffer();
+
+    // Pending copy run
+    private int copyBlock = -1;
+    private int copyCount;
+
+    /*package*/ DeltaWriter(HOutput output, DeltaSignature signature) {
+        this.output = output;
+        this.signature = signature;
+    }
+
+    /*package*/ void write(FileChannel channel, long size) throws IOException {
+        if (size > DeltaSignature.MAX_FILE_SIZE) {
+            throw new IOException("File is too big for delta: " + size);
+        }
+        MappedByteBuffer mapped = channel.map(MapMode.READ_ONLY, 0L, size);
+        write(mapped, (int) size);
+        output.writeUnsignedByte(DeltaSignature.OP_END);
+    }
+
+    private void flushCopy() throws IOException {
+        if (copyCount > 0) {
+            output.writeUnsignedByte(DeltaSignature.OP_COPY);
+            output.writeVarInt(copyBlock);
+            output.writeVarInt(copyCount);
+            copyCount = 0;
+        }
+    }
+
+    private void write(ByteBuffer data, int size) throws IOException {
+        int blockSize = signature.blockSize;
+        int literalStart = 0;
+        int position = 0;
+        int weakSum = size >= blockSize ? DeltaSignature.weakSum(data, 0, blockSize) : 0;
+        while (position <= size - blockSize) {
+            int block = signature.findBlock(data, position, weakSum);
+            if (block >= 0) {
+                writeLiteral(data, literalStart, position);
+
+                // Extend or start copy run
+                if (copyCount > 0 && block == copyBlock + copyCount) {
+                    copyCount++;
+                } else {
+                    flushCopy();
+                    copyBlock = block;
+                    copyCount = 1;
+                }
+
+                // Skip matched block
+                position += blockSize;
+                literalStart = position;
+                if (position <= size - blockSize) {
+                    weakSum = DeltaSignature.weakSum(data, position, blockSize);
+                }
+                continue;
+            }
+
+            // Roll to next byte
+            if (position < size - blockSize) {
+                weakSum = DeltaSignature.rollWeakSum(weakSum, blockSize, data.get(position), data.get(position + blockSize));
+            }
+            position++;
+            if (position - literalStart >= MAX_LITERAL_LENGTH) {
+                writeLiteral(data, literalStart, position);
+                literalStart = position;
+            }
+        }
+
+        // Write tail
+        writeLiteral(data, literalStart, size);
+        flushCopy();
+    }
+
+    private void writeLiteral(ByteBuffer data, int start, int end) throws IOException {
+        if (start >= end) {
+            return;
+        }
+        flushCopy();
+        output.writeUnsignedByte(DeltaSignature.OP_LITERAL);
+        output.writeVarInt(end - start);
+
+        // Copy literal bytes
+        for (int offset = start; offset < end; ) {
+            int length = Math.min(end - offset, buffer.length);
+            ByteBuffer slice = data.duplicate();
+            slice.position(offset);
+            slice.get(buffer, 0, length);
+            output.stream.write(buffer, 0, length);
+            offset += length;
+        }
+    }
+}
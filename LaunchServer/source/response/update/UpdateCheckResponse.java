@@ -0,0 +1,38 @@
+package launchserver.response.update;
+
+import java.util.Arrays;
+
+import launcher.hasher.HashedDir;
+import launcher.helper.IOHelper;
+import launcher.request.update.UpdateCheckRequest;
+import launcher.serialize.HInput;
+import launcher.serialize.HOutput;
+import launcher.serialize.signed.SignedObjectHolder;
+import launchserver.LaunchServer;
+import launchserver.response.Response;
+
+public final class UpdateCheckResponse extends Response {
+    public UpdateCheckResponse(LaunchServer server, long id, HInput input, HOutput output) {
+        super(server, id, input, output);
+    }
+
+    @Override
+    public void reply() throws Throwable {
+        int count = input.readLength(UpdateCheckRequest.MAX_DIRS);
+        boolean[] changed = new boolean[count];
+        for (int i = 0; i < count; i++) {
+            String dirName = IOHelper.verifyFileName(input.readString(255));
+            byte[] cachedHash = input.readByteArray(-HashedDir.HASH_ALGO.bytes);
+
+            // Compare with in-memory hdir (unknown dirs are always changed)
+            SignedObjectHolder<HashedDir> hdir = server.getUpdateDir(dirName);
+            changed[i] = hdir == null || !Arrays.equals(cachedHash, hdir.object.getHash());
+        }
+
+        // Write changed flags
+        debug("Checked %d update dirs", count);
+        for (boolean dirChanged : changed) {
+            output.writeBoolean(dirChanged);
+        }
+    }
+}
@@ -1,17 +1,29 @@
 package launchserver.response.update;
 
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SocketChannel;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
 import java.util.Deque;
+import java.util.HashSet;
 import java.util.LinkedList;
+import java.util.Set;
+import java.util.concurrent.locks.Lock;
+import java.util.zip.Deflater;
 import java.util.zip.DeflaterOutputStream;
 
 import launcher.hasher.HashedDir;
 import launcher.hasher.HashedEntry;
 import launcher.hasher.HashedEntry.Type;
+import launcher.hasher.HashedFile;
 import launcher.helper.IOHelper;
+import launcher.helper.SecurityHelper;
 import launcher.request.update.UpdateRequest;
 import launcher.request.update.UpdateRequest.Action;
 import launcher.serialize.HInput;
@@ -19,37 +31,109 @@ import launcher.serialize.HOutput;
 import launcher.serialize.signed.SignedObjectHolder;
 import launchserver.LaunchServer;
 import launchserver.response.Response;
+import launchserver.update.BandwidthScheduler;
+import launchserver.update.CompressionPolicy.Codec;
+import launchserver.update.UpdateGeneration;
 
 public final class UpdateResponse extends Response {
+    private static final long ZERO_COPY_MIN_SIZE = 0x10000; // Smaller files are cheaper to copy than to flush
+    private final SocketChannel channel;
+    private final InetAddress address;
+
+    // Update state
+    private final Deque<HashedDir> dirStack = new LinkedList<>();
+    private final Deque<String> dirNames = new LinkedList<>(); // Relative to generation dir
+    private UpdateGeneration generation;
+    private Deflater deflater;
+    private Codec codec = Codec.DEFAULT; // Of newDeflater()
+    private OutputStream fileOutput;
+    private BandwidthScheduler.Session session;
+    private OutputStream rawOutput; // Throttled output.stream
+
     public UpdateResponse(LaunchServer server, long id, HInput input, HOutput output) {
+        this(server, id, input, output, null);
+    }
+
+    public UpdateResponse(LaunchServer server, long id, HInput input, HOutput output, Socket socket) {
         super(server, id, input, output);
+        channel = socket == null ? null : socket.getChannel();
+        address = socket == null ? null : socket.getInetAddress();
     }
 
     @Override
     public void reply() throws IOException {
-        // Read update dir name
+        // Read update dir name, connection kind and cached hdir hash
         String updateDirName = IOHelper.verifyFileName(input.readString(255));
-        SignedObjectHolder<HashedDir> hdir = server.getUpdateDir(updateDirName);
-        if (hdir == null) {
-            requestError(String.format("Unknown update dir: %s", updateDirName));
+        boolean partition = input.readBoolean();
+        byte[] cachedHash = input.readBoolean() ? input.readByteArray(-HashedDir.HASH_ALGO.bytes) : null;
+        boolean cachedVerified = cachedHash != null && input.readBoolean();
+
+        // Limit update connections per client IP (partitions are counted against main connections of same IP)
+        boolean limited = address != null;
+        if (limited && !server.serverSocketHandler.acquireUpdateConnection(address, partition)) {
+            requestError("Too many update connections");
             return;
         }
+        try (BandwidthScheduler.Session newSession = server.bandwidthScheduler.startSession(address, updateDirName)) {
+            session = newSession;
+            rawOutput = session.wrap(output.stream);
+            generation = server.pinUpdateDir(updateDirName);
+            if (generation == null) {
+                requestError(String.format("Unknown update dir: %s", updateDirName));
+                return;
+            }
+            try {
+                reply(updateDirName, cachedHash, cachedVerified);
+            } finally {
+                generation.release();
+            }
+        } finally {
+            if (limited) {
+                server.serverSocketHandler.releaseUpdateConnection(address, partition);
+            }
+        }
+    }
+
+    private void reply(String updateDirName, byte[] cachedHash, boolean cachedVerified) throws IOException {
+        SignedObjectHolder<HashedDir> hdir = generation.hdir; // Pinned, so files won't change during session
         writeNoError(output);
 
-        // Write update hdir
+        // Write update hdir (skip if client has same cached one)
         debug("Update dir: '%s'", updateDirName);
-        hdir.write(output);
+        boolean unchanged = cachedHash != null && Arrays.equals(cachedHash, hdir.object.getHash());
+        output.writeBoolean(unchanged);
+        if (unchanged && cachedVerified) {
+            output.flush();
+            debug("Update dir is up to date");
+            return;
+        }
+        if (!unchanged) { // Client sends known subtrees only now, so no-op checks stay small
+            output.flush();
+            Set<String> knownHashes = readKnownHashes();
+            output.writeByteArray(hdir.getSign(), -SecurityHelper.RSA_KEY_LENGTH);
+            hdir.object.write(output, knownHashes);
+
+            // Write precomputed delta manifest, if client is on known generation
+            if (cachedVerified) {
+                byte[] manifest = server.generationStore == null ? null :
+                    server.generationStore.getManifest(updateDirName, cachedHash, hdir.object.getHash());
+                output.writeBoolean(manifest != null);
+                if (manifest != null) {
+                    debug("Delta manifest from known generation");
+                    output.stream.write(manifest);
+                }
+            }
+        }
         output.writeBoolean(server.config.compress);
         output.flush();
 
         // Prepare variables for actions queue
-        Path dir = server.updatesDir.resolve(updateDirName);
-        Deque<HashedDir> dirStack = new LinkedList<>();
         dirStack.add(hdir.object);
 
         // Perform update
         // noinspection IOResourceOpenedButNotSafelyClosed
-        OutputStream fileOutput = server.config.compress ? new DeflaterOutputStream(output.stream, IOHelper.newDeflater(), IOHelper.BUFFER_SIZE, true) : output.stream;
+        deflater = server.config.compress ? IOHelper.newDeflater() : null;
+        fileOutput = deflater != null ? new DeflaterOutputStream(rawOutput, deflater, IOHelper.BUFFER_SIZE, true) : rawOutput;
         Action[] actionsSlice = new Action[UpdateRequest.MAX_QUEUE_SIZE];
         loop:
         while (true) {
@@ -62,57 +146,15 @@ public final class UpdateResponse extends Response {
             // Perform actions
             for (int i = 0; i < length; i++) {
                 Action action = actionsSlice[i];
-                switch (action.type) {
-                    case CD:
-                        debug("CD '%s'", action.name);
-
-                        // Get hashed dir (for validation)
-                        HashedEntry hSubdir = dirStack.getLast().getEntry(action.name);
-                        if (hSubdir == null || hSubdir.getType() != Type.DIR) {
-                            throw new IOException("Unknown hashed dir: " + action.name);
-                        }
-                        dirStack.add((HashedDir) hSubdir);
-
-                        // Resolve dir
-                        dir = dir.resolve(action.name);
-                        break;
-                    case GET:
-                        debug("GET '%s'", action.name);
-
-                        // Get hashed file (for validation)
-                        HashedEntry hFile = dirStack.getLast().getEntry(action.name);
-                        if (hFile == null || hFile.getType() != Type.FILE) {
-                            throw new IOException("Unknown hashed file: " + action.name);
-                        }
-
-                        // Resolve and write file
-                        Path file = dir.resolve(action.name);
-                        if (IOHelper.readAttributes(file).size() != hFile.size()) {
-                            fileOutput.write(0x0);
-                            fileOutput.flush();
-                            throw new IOException("Unknown hashed file: " + action.name);
-                        }
-                        fileOutput.write(0xFF);
-                        try (InputStream fileInput = IOHelper.newInput(file)) {
-                            IOHelper.transfer(fileInput, fileOutput);
-                        }
-                        break;
-                    case CD_BACK:
-                        debug("CD ..");
-
-                        // Remove from hashed dir stack
-                        dirStack.removeLast();
-                        if (dirStack.isEmpty()) {
-                            throw new IOException("Empty hDir stack");
-                        }
-
-                        // Get parent
-                        dir = dir.getParent();
-                        break;
-                    case FINISH:
-                        break loop;
-                    default:
-                        throw new AssertionError(String.format("Unsupported action type: '%s'", action.type.name()));
+                if (action.type == Action.Type.STREAM) { // Client switched to streaming mode
+                    if (i != length - 1) {
+                        throw new IOException("STREAM action isn't last in slice");
+                    }
+                    streamActions();
+                    break loop;
+                }
+                if (!perform(action)) {
+                    break loop;
                 }
             }
 
@@ -125,4 +167,200 @@ public final class UpdateResponse extends Response {
             ((DeflaterOutputStream) fileOutput).finish();
         }
     }
+
+    private void applyCodec(Path file, HashedFile hFile) throws IOException {
+        if (deflater == null) {
+            return;
+        }
+
+        // Switch deflater params (takes effect right after file marker)
+        Codec fileCodec = server.config.compressPolicy.getCodec(file, hFile);
+        if (fileCodec != codec) {
+            fileCodec.apply(deflater);
+            codec = fileCodec;
+        }
+    }
+
+    private void fullFlush() throws IOException {
+        // Blob was deflated without dictionary, so our dictionary should be reset too
+        byte[] buffer = IOHelper.newBuffer();
+        int length;
+        do {
+            length = deflater.deflate(buffer, 0, buffer.length, Deflater.FULL_FLUSH);
+            rawOutput.write(buffer, 0, length);
+        } while (length == buffer.length);
+    }
+
+    private void getDelta(Action action) throws IOException {
+        debug("DELTA '%s'", action.name);
+
+        // Get hashed file (for validation)
+        HashedEntry hFile = dirStack.getLast().getEntry(action.name);
+        if (hFile == null || hFile.getType() != Type.FILE) {
+            throw new IOException("Unknown hashed file: " + action.name);
+        }
+
+        // Open and write delta
+        try (FileChannel fileChannel = openFile(action.name, (HashedFile) hFile)) {
+            fileOutput.write(0xFF);
+            new DeltaWriter(new HOutput(fileOutput), action.signature).write(fileChannel, hFile.size());
+        }
+    }
+
+    private void getFile(Action action) throws IOException {
+        debug("GET '%s' from %d", action.name, action.offset);
+
+        // Get hashed file (for validation)
+        HashedEntry hFile = dirStack.getLast().getEntry(action.name);
+        if (hFile == null || hFile.getType() != Type.FILE) {
+            throw new IOException("Unknown hashed file: " + action.name);
+        }
+
+        // Open and write file
+        try (FileChannel fileChannel = openFile(action.name, (HashedFile) hFile)) {
+            if (action.type == Action.Type.GET_FROM && (action.offset <= 0L || action.offset >= hFile.size())) {
+                throw new IOException(String.format("Invalid offset for file %s: %d", action.name, action.offset));
+            }
+            fileOutput.write(0xFF);
+
+            // Splice precompressed blob into deflate stream
+            FileChannel blob = deflater != null && codec != Codec.STORE && server.deflateCache != null && action.offset == 0L ?
+                server.deflateCache.get((HashedFile) hFile, resolve(action.name), codec) : null;
+            if (blob != null) {
+                try (FileChannel blobChannel = blob) { // Opened, so eviction can't delete it mid-stream
+                    fullFlush();
+                    transfer(blobChannel, 0L, blobChannel.size());
+                }
+                return;
+            }
+
+            // Write file as-is
+            if (channel != null && fileOutput == rawOutput && hFile.size() - action.offset >= ZERO_COPY_MIN_SIZE) {
+                transfer(fileChannel, action.offset, hFile.size());
+                return;
+            }
+            IOHelper.transfer(Channels.newInputStream(fileChannel.position(action.offset)), fileOutput);
+        }
+    }
+
+    private FileChannel openFile(String name, HashedFile hFile) throws IOException {
+        // Hold generation lock only while opening, opened file is readable after move
+        FileChannel fileChannel;
+        Lock fileLock = generation.getFileLock();
+        fileLock.lock();
+        try {
+            Path file = resolve(name);
+            fileChannel = FileChannel.open(file, StandardOpenOption.READ);
+            try {
+                applyCodec(file, hFile);
+            } catch (IOException e) {
+                fileChannel.close();
+                throw e;
+            }
+        } finally {
+            fileLock.unlock();
+        }
+
+        // Verify file wasn't changed after hashing
+        if (fileChannel.size() != hFile.size) {
+            fileChannel.close();
+            fileOutput.write(0x0);
+            fileOutput.flush();
+            throw new IOException("Unknown hashed file: " + name);
+        }
+        return fileChannel;
+    }
+
+    private boolean perform(Action action) throws IOException {
+        switch (action.type) {
+            case CD:
+                debug("CD '%s'", action.name);
+
+                // Get hashed dir (for validation)
+                HashedEntry hSubdir = dirStack.getLast().getEntry(action.name);
+                if (hSubdir == null || hSubdir.getType() != Type.DIR) {
+                    throw new IOException("Unknown hashed dir: " + action.name);
+                }
+                dirStack.add((HashedDir) hSubdir);
+
+                // Resolve dir
+                dirNames.add(action.name);
+                break;
+            case GET:
+            case GET_FROM:
+                getFile(action);
+                break;
+            case DELTA:
+                getDelta(action);
+                break;
+            case CD_BACK:
+                debug("CD ..");
+
+                // Remove from hashed dir stack
+                dirStack.removeLast();
+                if (dirStack.isEmpty()) {
+                    throw new IOException("Empty hDir stack");
+                }
+
+                // Get parent
+                dirNames.removeLast();
+                break;
+            case STREAM:
+                throw new IOException("Unexpected STREAM action");
+            case FINISH:
+                return false;
+            default:
+                throw new AssertionError(String.format("Unsupported action type: '%s'", action.type.name()));
+        }
+        return true;
+    }
+
+    private Set<String> readKnownHashes() throws IOException {
+        int knownCount = input.readLength(UpdateRequest.MAX_KNOWN_SUBTREES);
+        Set<String> knownHashes = new HashSet<>(knownCount);
+        for (int i = 0; i < knownCount; i++) {
+            knownHashes.add(SecurityHelper.toHex(input.readByteArray(-HashedDir.HASH_ALGO.bytes)));
+        }
+        return knownHashes;
+    }
+
+    private Path resolve(String name) {
+        Path dir = generation.getDir();
+        for (String dirName : dirNames) {
+            dir = dir.resolve(dirName);
+        }
+        return dir.resolve(name);
+    }
+
+    private void streamActions() throws IOException {
+        debug("STREAM");
+        while (true) {
+            // Flush only if client hasn't sent next action yet
+            if (input.stream.available() <= 0) {
+                fileOutput.flush();
+            }
+            if (!perform(new Action(input))) {
+                break;
+            }
+        }
+    }
+
+    private void transfer(FileChannel fileChannel, long position, long size) throws IOException {
+        if (channel == null) {
+            IOHelper.transfer(Channels.newInputStream(fileChannel.position(position)), rawOutput);
+            return;
+        }
+
+        // Zero-copy transfer
+        output.stream.flush();
+        while (position < size) {
+            int granted = session.acquire((int) Math.min(size - position, Integer.MAX_VALUE));
+            long transferred = fileChannel.transferTo(position, granted, channel);
+            session.refund(granted - Math.max(transferred, 0L)); // Socket buffer was full
+            if (transferred <= 0 && position >= fileChannel.size()) {
+                throw new IOException("File was truncated during transfer");
+            }
+            position += transferred;
+        }
+    }
 }
@@ -0,0 +1,239 @@
+package launchserver.update;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import launcher.LauncherAPI;
+import launcher.helper.LogHelper;
+import launcher.helper.VerifyHelper;
+
+public final class BandwidthScheduler implements Runnable {
+    @LauncherAPI public static final long REFILL_INTERVAL = 100L;
+    private static final long MIN_BURST = 0x10000; // Let small limits still write whole buffers
+    private static final double RATE_SMOOTHING = 0.3D;
+
+    // Instance
+    private final Set<Session> sessions = ConcurrentHashMap.newKeySet();
+    private final int reservePercent;
+    private volatile long limit; // Bytes per second, 0 for unlimited
+
+    @LauncherAPI
+    public BandwidthScheduler(long limit, int reservePercent) {
+        this.reservePercent = VerifyHelper.verifyInt(reservePercent, VerifyHelper.range(0, 99), "Illegal bandwidth reserve percent");
+        setLimit(limit);
+    }
+
+    @Override
+    @LauncherAPI
+    public void run() {
+        try {
+            while (!Thread.interrupted()) {
+                Thread.sleep(REFILL_INTERVAL);
+                refill();
+            }
+        } catch (InterruptedException ignored) {
+            // Do nothing (stopped)
+        } catch (Throwable exc) {
+            LogHelper.error(exc);
+        }
+    }
+
+    @LauncherAPI
+    public long getLimit() {
+        return limit;
+    }
+
+    @LauncherAPI
+    public long getUpdatesLimit() {
+        return limit * (100 - reservePercent) / 100;
+    }
+
+    @LauncherAPI
+    public Collection<Session> getSessions() {
+        return Collections.unmodifiableSet(sessions);
+    }
+
+    @LauncherAPI
+    public void setLimit(long limit) {
+        this.limit = VerifyHelper.verifyLong(limit, VerifyHelper.L_NOT_NEGATIVE, "Illegal bandwidth limit");
+        for (Session session : sessions) {
+            session.wakeUp(); // May be unlimited now
+        }
+    }
+
+    @LauncherAPI
+    public Session startSession(InetAddress address, String dirName) {
+        Session session = new Session(address, dirName);
+        sessions.add(session);
+        return session;
+    }
+
+    private void refill() {
+        for (Session session : sessions) {
+            session.updateRate();
+        }
+        long updatesLimit = getUpdatesLimit();
+        if (updatesLimit <= 0L) {
+            return; // Unlimited
+        }
+
+        // Group sessions by client, so parallel partition connections don't get bigger share
+        Map<Object, List<Session>> clients = new HashMap<>(sessions.size());
+        for (Session session : sessions) {
+            clients.computeIfAbsent(session.address == null ? session : session.address, k -> new ArrayList<>(4)).add(session);
+        }
+
+        // Share tick budget equally between clients, give leftovers of saturated clients to others
+        long budget = updatesLimit * REFILL_INTERVAL / 1000L;
+        long capacity = Math.max(budget, MIN_BURST);
+        List<List<Session>> hungry = new ArrayList<>(clients.values());
+        while (budget > 0L && !hungry.isEmpty()) {
+            long share = Math.max(budget / hungry.size(), 1L);
+            for (int i = hungry.size() - 1; i >= 0 && budget > 0L; i--) {
+                long added = refill(hungry.get(i), Math.min(share, budget), capacity);
+                budget -= added;
+                if (added < share) { // All client buckets are full
+                    hungry.remove(i);
+                }
+            }
+        }
+    }
+
+    private static long refill(List<Session> clientSessions, long amount, long capacity) {
+        // Share client budget equally between its connections, same way as between clients
+        long left = amount;
+        List<Session> hungry = new ArrayList<>(clientSessions);
+        while (left > 0L && !hungry.isEmpty()) {
+            long share = Math.max(left / hungry.size(), 1L);
+            for (int i = hungry.size() - 1; i >= 0 && left > 0L; i--) {
+                long added = hungry.get(i).refill(Math.min(share, left), capacity);
+                left -= added;
+                if (added < share) { // Bucket is full
+                    hungry.remove(i);
+                }
+            }
+        }
+        return amount - left;
+    }
+
+    public final class Session implements AutoCloseable {
+        @LauncherAPI public final InetAddress address;
+        @LauncherAPI public final String dirName;
+        @LauncherAPI public final long startTime = System.currentTimeMillis();
+        private final AtomicLong written = new AtomicLong(0L);
+
+        // Token bucket (guarded by this)
+        private long tokens;
+
+        // Rate (updated by scheduler only)
+        private long lastWritten;
+        private volatile double rate;
+
+        private Session(InetAddress address, String dirName) {
+            this.address = address;
+            this.dirName = dirName;
+        }
+
+        @Override
+        @LauncherAPI
+        public void close() {
+            sessions.remove(this);
+        }
+
+        @LauncherAPI
+        public synchronized int acquire(int length) throws InterruptedIOException {
+            while (limit > 0L && tokens <= 0L) {
+                try {
+                    wait(REFILL_INTERVAL);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while waiting for bandwidth");
+                }
+            }
+
+            // Take available tokens
+            int granted = limit > 0L ? (int) Math.min(length, tokens) : length;
+            tokens -= granted;
+            written.addAndGet(granted);
+            return granted;
+        }
+
+        @LauncherAPI
+        public double getRate() {
+            return rate;
+        }
+
+        @LauncherAPI
+        public long getWritten() {
+            return written.get();
+        }
+
+        @LauncherAPI
+        public synchronized void refund(long length) {
+            tokens += length;
+            written.addAndGet(-length);
+        }
+
+        @LauncherAPI
+        public OutputStream wrap(OutputStream output) {
+            return new ThrottledOutputStream(output, this);
+        }
+
+        private synchronized long refill(long amount, long capacity) {
+            long added = Math.max(Math.min(amount, capacity - tokens), 0L);
+            if (added > 0L) {
+                tokens += added;
+                notifyAll();
+            }
+            return added;
+        }
+
+        private void updateRate() {
+            long newWritten = written.get();
+            double tickRate = (newWritten - lastWritten) * 1000.0D / REFILL_INTERVAL;
+            rate += (tickRate - rate) * RATE_SMOOTHING;
+            lastWritten = newWritten;
+        }
+
+        private synchronized void wakeUp() {
+            notifyAll();
+        }
+    }
+
+    private static final class ThrottledOutputStream extends FilterOutputStream {
+        private final Session session;
+
+        private ThrottledOutputStream(OutputStream out, Session session) {
+            super(out);
+            this.session = session;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            session.acquire(1);
+            out.write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            while (len > 0) {
+                int granted = session.acquire(len);
+                out.write(b, off, granted);
+                off += granted;
+                len -= granted;
+            }
+        }
+    }
+}
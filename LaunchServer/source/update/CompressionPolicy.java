@@ -0,0 +1,149 @@
+package launchserver.update;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.Deflater;
+
+import launcher.LauncherAPI;
+import launcher.hasher.HashedFile;
+import launcher.helper.IOHelper;
+import launcher.helper.SecurityHelper;
+import launcher.helper.VerifyHelper;
+import launcher.serialize.config.ConfigObject;
+import launcher.serialize.config.entry.BlockConfigEntry;
+import launcher.serialize.config.entry.ConfigEntry;
+import launcher.serialize.config.entry.IntegerConfigEntry;
+import launcher.serialize.config.entry.StringConfigEntry;
+
+public final class CompressionPolicy extends ConfigObject {
+    @LauncherAPI public static final int ENTROPY_SAMPLE_SIZE = 0x4000;
+    private static final String[] STORED_EXTENSIONS = {
+        "jar", "zip", "gz", "xz", "png", "jpg", "jpeg", "ogg", "mp3", "mp4", "webm"
+    };
+
+    // Instance
+    @LauncherAPI public final Codec codec;
+    @LauncherAPI public final int storeEntropy;
+    private final Map<String, Codec> codecs;
+    private final Map<String, Codec> sampled = new ConcurrentHashMap<>(256);
+
+    @LauncherAPI
+    public CompressionPolicy(BlockConfigEntry block) {
+        super(block);
+        codec = block.hasEntry("codec") ? Codec.byName(block.getEntryValue("codec", StringConfigEntry.class)) : Codec.DEFAULT;
+        storeEntropy = block.hasEntry("storeEntropy") ? VerifyHelper.verifyInt(block.getEntryValue("storeEntropy", IntegerConfigEntry.class),
+            VerifyHelper.range(0, 100), "Illegal store entropy percent") : 97;
+
+        // Per-extension codecs (already compressed formats are stored by default)
+        Map<String, Codec> newCodecs = new HashMap<>(16);
+        if (block.hasEntry("codecs")) {
+            for (Map.Entry<String, ConfigEntry<?>> entry : block.getEntry("codecs", BlockConfigEntry.class).getValue().entrySet()) {
+                String name = ((StringConfigEntry) entry.getValue()).getValue();
+                newCodecs.put(entry.getKey().toLowerCase(Locale.ROOT), Codec.byName(name));
+            }
+        } else {
+            for (String extension : STORED_EXTENSIONS) {
+                newCodecs.put(extension, Codec.STORE);
+            }
+        }
+        codecs = Collections.unmodifiableMap(newCodecs);
+    }
+
+    @LauncherAPI
+    public Codec getCodec(Path file, HashedFile hFile) throws IOException {
+        Codec extensionCodec = codecs.get(getExtension(IOHelper.getFileName(file)));
+        if (extensionCodec != null) {
+            return extensionCodec;
+        }
+        if (storeEntropy <= 0 || hFile.size < ENTROPY_SAMPLE_SIZE) {
+            return codec;
+        }
+
+        // Sample entropy (cache by digest, file content is the same)
+        byte[] digest = hFile.getDigest();
+        if (digest == null) {
+            return sampleCodec(file, hFile.size);
+        }
+        String key = SecurityHelper.toHex(digest);
+        Codec sampledCodec = sampled.get(key);
+        if (sampledCodec == null) {
+            sampledCodec = sampleCodec(file, hFile.size);
+            sampled.put(key, sampledCodec);
+        }
+        return sampledCodec;
+    }
+
+    private Codec sampleCodec(Path file, long size) throws IOException {
+        ByteBuffer sample = ByteBuffer.allocate(ENTROPY_SAMPLE_SIZE);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long position = (size - ENTROPY_SAMPLE_SIZE) / 2; // Skip headers
+            while (sample.hasRemaining()) {
+                if (channel.read(sample, position + sample.position()) < 0) {
+                    break; // Truncated
+                }
+            }
+        }
+        return entropyPercent(sample.array(), sample.position()) > storeEntropy ? Codec.STORE : codec;
+    }
+
+    @LauncherAPI
+    public static double entropyPercent(byte[] bytes, int length) {
+        int[] counts = new int[256];
+        for (int i = 0; i < length; i++) {
+            counts[Byte.toUnsignedInt(bytes[i])]++;
+        }
+
+        // Shannon entropy, 8 bits per byte is 100%
+        double entropy = 0.0D;
+        for (int count : counts) {
+            if (count > 0) {
+                double p = (double) count / length;
+                entropy -= p * Math.log(p);
+            }
+        }
+        return entropy / Math.log(2.0D) / Byte.SIZE * 100.0D;
+    }
+
+    private static String getExtension(String fileName) {
+        int index = fileName.lastIndexOf('.');
+        return index < 0 ? "" : fileName.substring(index + 1).toLowerCase(Locale.ROOT);
+    }
+
+    public enum Codec {
+        STORE(Deflater.NO_COMPRESSION, Deflater.DEFAULT_STRATEGY),
+        HUFFMAN(Deflater.DEFAULT_COMPRESSION, Deflater.HUFFMAN_ONLY),
+        FAST(Deflater.BEST_SPEED, Deflater.DEFAULT_STRATEGY),
+        DEFAULT(Deflater.DEFAULT_COMPRESSION, Deflater.DEFAULT_STRATEGY),
+        BEST(Deflater.BEST_COMPRESSION, Deflater.DEFAULT_STRATEGY);
+        private final int level;
+        private final int strategy;
+
+        Codec(int level, int strategy) {
+            this.level = level;
+            this.strategy = strategy;
+        }
+
+        @LauncherAPI
+        public void apply(Deflater deflater) {
+            deflater.setLevel(level);
+            deflater.setStrategy(strategy);
+        }
+
+        @LauncherAPI
+        public static Codec byName(String name) {
+            try {
+                return valueOf(name.toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException(String.format("Unknown compression codec: '%s'", name), e);
+            }
+        }
+    }
+}
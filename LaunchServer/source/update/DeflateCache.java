@@ -0,0 +1,276 @@
+package launchserver.update;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.Deflater;
+
+import launcher.LauncherAPI;
+import launcher.hasher.HashedDir;
+import launcher.hasher.HashedEntry;
+import launcher.hasher.HashedFile;
+import launcher.helper.CommonHelper;
+import launcher.helper.IOHelper;
+import launcher.helper.LogHelper;
+import launcher.helper.SecurityHelper;
+import launcher.serialize.signed.SignedObjectHolder;
+import launchserver.update.CompressionPolicy.Codec;
+
+public final class DeflateCache {
+    @LauncherAPI public static final long MIN_FILE_SIZE = 0x10000; // Smaller files are cheap to compress
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    // Instance
+    @LauncherAPI public final Path dir;
+    @LauncherAPI public final long maxSize;
+    private final Map<String, Blob> blobs = new ConcurrentHashMap<>(64);
+    private final Set<String> building = ConcurrentHashMap.newKeySet();
+    private final AtomicLong totalSize = new AtomicLong(0L);
+    private final ExecutorService builder = Executors.newSingleThreadExecutor(
+        r -> CommonHelper.newThread("Deflate Cache Thread", true, r));
+
+    @LauncherAPI
+    public DeflateCache(Path dir, long maxSize) throws IOException {
+        this.dir = dir;
+        this.maxSize = maxSize;
+        Files.createDirectories(dir);
+
+        // Index existing blobs
+        try (DirectoryStream<Path> dirStream = Files.newDirectoryStream(dir)) {
+            for (Path file : dirStream) {
+                String name = IOHelper.getFileName(file);
+                if (name.endsWith(TEMP_SUFFIX)) { // Interrupted build
+                    Files.deleteIfExists(file);
+                    continue;
+                }
+                if (parseCodec(name) == null) { // Unknown blob format
+                    Files.delete(file);
+                    continue;
+                }
+                BasicFileAttributes attributes = IOHelper.readAttributes(file);
+                blobs.put(name, new Blob(file, attributes.size(), attributes.lastModifiedTime().toMillis()));
+                totalSize.addAndGet(attributes.size());
+            }
+        }
+        evict();
+    }
+
+    @LauncherAPI
+    public FileChannel get(HashedFile hFile, Path file, Codec codec) throws IOException {
+        byte[] digest = hFile.getDigest();
+        if (digest == null || hFile.size < MIN_FILE_SIZE) {
+            return null; // Unhashed or too small
+        }
+
+        // Return existing blob (each codec has its own)
+        String name = SecurityHelper.toHex(digest) + '.' + codec.name().toLowerCase(Locale.ROOT);
+        Blob blob = blobs.get(name);
+        if (blob != null) {
+            blob.lastAccess = System.currentTimeMillis();
+            FileChannel channel = open(blob.file);
+            if (channel != null) {
+                return channel;
+            }
+            // Evicted right before opening, build again
+        }
+
+        // Build new blob in background (client would time out waiting for big file), deflate inline meanwhile
+        if (building.add(name)) {
+            try {
+                builder.execute(() -> buildBlob(name, digest, file, codec));
+            } catch (RejectedExecutionException e) {
+                building.remove(name);
+            }
+        }
+        return null;
+    }
+
+    @LauncherAPI
+    public long getTotalSize() {
+        return totalSize.get();
+    }
+
+    @LauncherAPI
+    public void retain(Collection<SignedObjectHolder<HashedDir>> hdirs) {
+        Set<String> digests = new HashSet<>(blobs.size());
+        for (SignedObjectHolder<HashedDir> hdir : hdirs) {
+            collectDigests(hdir.object, digests);
+        }
+
+        // Remove blobs of no longer existing files
+        int removed = 0;
+        for (String name : new ArrayList<>(blobs.keySet())) {
+            if (!digests.contains(name.substring(0, name.indexOf('.'))) && remove(name)) {
+                removed++;
+            }
+        }
+        if (removed > 0) {
+            LogHelper.subInfo("Removed %d stale deflate cache blobs", removed);
+        }
+    }
+
+    private Blob build(String name, byte[] digest, FileChannel file, Codec codec) throws IOException {
+        Path blobFile = dir.resolve(name);
+        Path tempFile = dir.resolve(name + TEMP_SUFFIX);
+        MessageDigest actualDigest = SecurityHelper.newDigest(HashedFile.DIGEST_ALGO);
+
+        // Deflate file (sync flushed, so blob can be spliced into any deflate stream)
+        Deflater deflater = IOHelper.newDeflater();
+        codec.apply(deflater);
+        try (OutputStream output = IOHelper.newOutput(tempFile)) {
+            byte[] buffer = IOHelper.newBuffer();
+            byte[] deflated = IOHelper.newBuffer();
+            ByteBuffer input = ByteBuffer.wrap(buffer);
+            long position = 0L; // Positional reads, so caller's channel position isn't changed
+            for (int length = file.read(input, position); length >= 0; length = file.read(input, position)) {
+                position += length;
+                input.clear();
+                actualDigest.update(buffer, 0, length);
+                deflater.setInput(buffer, 0, length);
+                while (!deflater.needsInput()) {
+                    output.write(deflated, 0, deflater.deflate(deflated, 0, deflated.length, Deflater.NO_FLUSH));
+                }
+            }
+            int length;
+            do {
+                length = deflater.deflate(deflated, 0, deflated.length, Deflater.SYNC_FLUSH);
+                output.write(deflated, 0, length);
+            } while (length == deflated.length);
+        } finally {
+            deflater.end();
+        }
+
+        // File was changed after hashing, don't cache
+        if (!Arrays.equals(digest, actualDigest.digest())) {
+            Files.delete(tempFile);
+            return null;
+        }
+
+        // Publish blob
+        Files.move(tempFile, blobFile, StandardCopyOption.REPLACE_EXISTING);
+        return new Blob(blobFile, IOHelper.readAttributes(blobFile).size(), System.currentTimeMillis());
+    }
+
+    private void buildBlob(String name, byte[] digest, Path file, Codec codec) {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            Blob blob = build(name, digest, channel, codec);
+            if (blob == null) {
+                return;
+            }
+            if (blob.size > maxSize) { // Won't fit anyway
+                Files.delete(blob.file);
+                return;
+            }
+            Blob previous = blobs.put(name, blob);
+            totalSize.addAndGet(previous == null ? blob.size : blob.size - previous.size);
+            evict();
+        } catch (IOException e) { // File was moved or removed meanwhile, etc
+            LogHelper.debug("Can't build deflate cache blob '%s': %s", name, e);
+        } finally {
+            building.remove(name);
+        }
+    }
+
+    private void evict() {
+        if (totalSize.get() <= maxSize) {
+            return;
+        }
+
+        // Remove least recently used blobs
+        List<Map.Entry<String, Blob>> entries = new ArrayList<>(blobs.entrySet());
+        entries.sort(Comparator.comparingLong(e -> e.getValue().lastAccess));
+        for (Map.Entry<String, Blob> entry : entries) {
+            if (totalSize.get() <= maxSize) {
+                break;
+            }
+            remove(entry.getKey());
+        }
+    }
+
+    private boolean remove(String name) {
+        Blob blob = blobs.remove(name);
+        if (blob == null) {
+            return false;
+        }
+        totalSize.addAndGet(-blob.size);
+        try {
+            Files.deleteIfExists(blob.file);
+        } catch (IOException e) {
+            LogHelper.error(e);
+        }
+        return true;
+    }
+
+    private static void collectDigests(HashedDir hdir, Set<String> digests) {
+        for (HashedEntry entry : hdir.map().values()) {
+            switch (entry.getType()) {
+                case FILE:
+                    byte[] digest = ((HashedFile) entry).getDigest();
+                    if (digest != null) {
+                        digests.add(SecurityHelper.toHex(digest));
+                    }
+                    break;
+                case DIR:
+                    collectDigests((HashedDir) entry, digests);
+                    break;
+                default:
+                    throw new AssertionError("Unsupported hashed entry type: " + entry.getType().name());
+            }
+        }
+    }
+
+    private static FileChannel open(Path file) throws IOException {
+        try {
+            return FileChannel.open(file, StandardOpenOption.READ); // Opened blob survives removal
+        } catch (NoSuchFileException ignored) {
+            return null;
+        }
+    }
+
+    private static Codec parseCodec(String name) {
+        int index = name.indexOf('.');
+        if (index < 0) {
+            return null;
+        }
+        try {
+            return Codec.byName(name.substring(index + 1));
+        } catch (IllegalArgumentException ignored) {
+            return null;
+        }
+    }
+
+    private static final class Blob {
+        private final Path file;
+        private final long size;
+        private volatile long lastAccess;
+
+        private Blob(Path file, long size, long lastAccess) {
+            this.file = file;
+            this.size = size;
+            this.lastAccess = lastAccess;
+        }
+    }
+}
@@ -0,0 +1,182 @@
+package launchserver.update;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import launcher.LauncherAPI;
+import launcher.hasher.DiffManifest;
+import launcher.hasher.HashedDir;
+import launcher.helper.IOHelper;
+import launcher.helper.LogHelper;
+import launcher.helper.SecurityHelper;
+import launcher.helper.VerifyHelper;
+import launcher.serialize.HInput;
+
+public final class GenerationStore {
+    private static final String GENERATION_SUFFIX = ".bin";
+
+    // Instance
+    @LauncherAPI public final Path dir;
+    @LauncherAPI public final int maxGenerations;
+    private final Map<String, DirGenerations> dirs = new ConcurrentHashMap<>(16);
+
+    @LauncherAPI
+    public GenerationStore(Path dir, int maxGenerations) throws IOException {
+        this.dir = dir;
+        this.maxGenerations = VerifyHelper.verifyInt(maxGenerations, VerifyHelper.POSITIVE, "Illegal max generations count");
+        Files.createDirectories(dir);
+    }
+
+    @LauncherAPI
+    public byte[] getManifest(String name, byte[] fromHash, byte[] toHash) {
+        DirGenerations generations = dirs.get(name);
+        Manifests manifests = generations == null ? null : generations.manifests;
+        if (manifests == null || !manifests.target.equals(SecurityHelper.toHex(toHash))) {
+            return null; // Not published yet
+        }
+        return manifests.bytes.get(SecurityHelper.toHex(fromHash));
+    }
+
+    @LauncherAPI
+    public synchronized void publish(String name, HashedDir hdir) throws IOException {
+        String hash = SecurityHelper.toHex(hdir.getHash());
+        DirGenerations generations = dirs.get(name);
+        if (generations == null) {
+            generations = load(name);
+            dirs.put(name, generations);
+        }
+        boolean changed = generations.current == null || !generations.current.hash.equals(hash);
+        if (!changed && generations.manifests != null) {
+            return; // Nothing changed
+        }
+        if (changed) {
+            // Move current to history (rolled back generation becomes current again)
+            if (generations.current != null) {
+                generations.history.addFirst(generations.current);
+            }
+            generations.history.removeIf(g -> g.hash.equals(hash));
+            while (generations.history.size() > maxGenerations) {
+                Files.deleteIfExists(getGenerationFile(name, generations.history.removeLast().hash));
+            }
+
+            // Store new generation (mtime keeps order after restart)
+            Path generationFile = getGenerationFile(name, hash);
+            if (!IOHelper.isFile(generationFile)) {
+                IOHelper.write(generationFile, hdir.write());
+            }
+            Files.setLastModifiedTime(generationFile, FileTime.fromMillis(System.currentTimeMillis()));
+            generations.current = new Generation(hash, hdir);
+        }
+
+        // Precompute manifests from old generations
+        Map<String, byte[]> bytes = new HashMap<>(generations.history.size());
+        for (Generation generation : generations.history) {
+            bytes.put(generation.hash, new DiffManifest(generation.hdir, hdir).write());
+        }
+        generations.manifests = new Manifests(hash, Collections.unmodifiableMap(bytes));
+        if (!bytes.isEmpty()) {
+            LogHelper.subInfo("Precomputed %d delta manifests for '%s'", bytes.size(), name);
+        }
+    }
+
+    @LauncherAPI
+    public synchronized void retain(Collection<String> names) throws IOException {
+        dirs.keySet().retainAll(names);
+
+        // Delete generations of removed update dirs
+        try (DirectoryStream<Path> dirStream = Files.newDirectoryStream(dir)) {
+            for (Path generationsDir : dirStream) {
+                if (!names.contains(IOHelper.getFileName(generationsDir))) {
+                    IOHelper.deleteDir(generationsDir, true);
+                }
+            }
+        }
+    }
+
+    private Path getGenerationFile(String name, String hash) {
+        return dir.resolve(name).resolve(hash + GENERATION_SUFFIX);
+    }
+
+    private DirGenerations load(String name) throws IOException {
+        DirGenerations generations = new DirGenerations();
+        Path generationsDir = dir.resolve(name);
+        Files.createDirectories(generationsDir);
+
+        // Read stored generations
+        List<Path> files = new ArrayList<>(maxGenerations + 1);
+        try (DirectoryStream<Path> dirStream = Files.newDirectoryStream(generationsDir)) {
+            for (Path file : dirStream) {
+                files.add(file);
+            }
+        }
+        files.sort(Comparator.comparing((Path file) -> {
+            try {
+                return IOHelper.readAttributes(file).lastModifiedTime();
+            } catch (IOException e) {
+                return FileTime.fromMillis(0L);
+            }
+        }).reversed());
+        for (Path file : files) {
+            String fileName = IOHelper.getFileName(file);
+            String hash = fileName.endsWith(GENERATION_SUFFIX) ?
+                fileName.substring(0, fileName.length() - GENERATION_SUFFIX.length()) : null;
+            HashedDir hdir = hash == null || generations.history.size() > maxGenerations ? null : read(file);
+            if (hdir == null || !SecurityHelper.toHex(hdir.getHash()).equals(hash)) {
+                Files.delete(file); // Corrupted or too old
+                continue;
+            }
+            generations.history.add(new Generation(hash, hdir));
+        }
+
+        // Newest stored generation was current before restart
+        generations.current = generations.history.pollFirst();
+        return generations;
+    }
+
+    private static HashedDir read(Path file) {
+        try (HInput input = new HInput(IOHelper.read(file))) {
+            return new HashedDir(input);
+        } catch (IOException e) {
+            LogHelper.error(e);
+            return null;
+        }
+    }
+
+    private static final class DirGenerations {
+        private final LinkedList<Generation> history = new LinkedList<>(); // Newest first
+        private Generation current;
+        private volatile Manifests manifests;
+    }
+
+    private static final class Generation {
+        private final String hash;
+        private final HashedDir hdir;
+
+        private Generation(String hash, HashedDir hdir) {
+            this.hash = hash;
+            this.hdir = hdir;
+        }
+    }
+
+    private static final class Manifests {
+        private final String target;
+        private final Map<String, byte[]> bytes;
+
+        private Manifests(String target, Map<String, byte[]> bytes) {
+            this.target = target;
+            this.bytes = bytes;
+        }
+    }
+}
@@ -0,0 +1,266 @@
+package launchserver.update;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import launcher.LauncherAPI;
+import launcher.hasher.HashIndex;
+import launcher.hasher.HashedDir;
+import launcher.hasher.HashedEntry;
+import launcher.hasher.HashedFile;
+import launcher.helper.IOHelper;
+import launcher.helper.LogHelper;
+import launcher.helper.SecurityHelper;
+import launcher.serialize.HInput;
+import launcher.serialize.signed.SignedObjectHolder;
+
+public final class ObjectStore {
+    private static final String TEMP_SUFFIX = ".dedup";
+    private static final String INDEX_FILE = "index.bin";
+
+    // Instance
+    @LauncherAPI public final Path dir;
+    private volatile HashIndex index; // Object file keys, shared with update dirs indexes
+
+    @LauncherAPI
+    public ObjectStore(Path dir) throws IOException {
+        this.dir = dir;
+        Files.createDirectories(dir);
+        index = scan();
+        writeIndex();
+    }
+
+    @LauncherAPI
+    public synchronized long dedup(Path updateDir, HashedDir hdir) throws IOException {
+        long reclaimed = dedupDir(updateDir, hdir);
+        writeIndex();
+        return reclaimed;
+    }
+
+    @LauncherAPI
+    public HashIndex getIndex() {
+        return index;
+    }
+
+    @LauncherAPI
+    public synchronized void retain(Collection<SignedObjectHolder<HashedDir>> hdirs) throws IOException {
+        Set<String> digests = new HashSet<>(index.size());
+        for (SignedObjectHolder<HashedDir> hdir : hdirs) {
+            collectDigests(hdir.object, digests);
+        }
+
+        // Remove objects no update dir links to anymore
+        int removed = 0;
+        try (DirectoryStream<Path> prefixStream = Files.newDirectoryStream(dir)) {
+            for (Path prefixDir : prefixStream) {
+                if (!IOHelper.isDir(prefixDir)) {
+                    continue;
+                }
+                try (DirectoryStream<Path> objectStream = Files.newDirectoryStream(prefixDir)) {
+                    for (Path object : objectStream) {
+                        if (!digests.contains(IOHelper.getFileName(object))) {
+                            Files.delete(object);
+                            removed++;
+                        }
+                    }
+                }
+            }
+        }
+        if (removed > 0) {
+            LogHelper.subInfo("Removed %d stale store objects", removed);
+            index = scan();
+            writeIndex();
+        }
+    }
+
+    private long dedupDir(Path updateDir, HashedDir hdir) throws IOException {
+        long reclaimed = 0L;
+        for (Map.Entry<String, HashedEntry> entry : hdir.map().entrySet()) {
+            Path path = updateDir.resolve(entry.getKey());
+            switch (entry.getValue().getType()) {
+                case FILE:
+                    reclaimed += dedupFile(path, (HashedFile) entry.getValue());
+                    break;
+                case DIR:
+                    reclaimed += dedupDir(path, (HashedDir) entry.getValue());
+                    break;
+                default:
+                    throw new AssertionError("Unsupported hashed entry type: " + entry.getValue().getType().name());
+            }
+        }
+        return reclaimed;
+    }
+
+    private long dedupFile(Path file, HashedFile hFile) throws IOException {
+        byte[] digest = hFile.getDigest();
+        if (digest == null || hFile.size <= 0L || Files.isSymbolicLink(file)) {
+            return 0L; // Nothing to share
+        }
+        BasicFileAttributes attrs = IOHelper.readAttributes(file);
+        if (attrs.size() != hFile.size) {
+            LogHelper.subWarning("File was modified after hashing: '%s'", file);
+            return 0L;
+        }
+
+        // Store new object (file becomes its first link)
+        String name = SecurityHelper.toHex(digest);
+        Path object = getObjectFile(name);
+        if (!IOHelper.exists(object)) {
+            if (!Arrays.equals(digest, SecurityHelper.digest(HashedFile.DIGEST_ALGO, file))) {
+                LogHelper.subWarning("File was modified after hashing: '%s'", file);
+                return 0L;
+            }
+            Files.createDirectories(object.getParent());
+            Files.createLink(object, file);
+            object.toFile().setWritable(false, false); // In-place edit would change all linked dirs
+            index.put(name, IOHelper.readAttributes(object), digest);
+            return 0L;
+        }
+
+        // Replace copy with link to object
+        if (Files.isSameFile(object, file)) {
+            return 0L; // Already linked
+        }
+        if (!contentEquals(object, file, hFile.size)) {
+            LogHelper.subWarning("File content doesn't match store object: '%s'", file);
+            return 0L;
+        }
+        boolean lastLink = getLinkCount(file) <= 1;
+        Path tempFile = file.resolveSibling(IOHelper.getFileName(file) + TEMP_SUFFIX);
+        Files.deleteIfExists(tempFile);
+        Files.createLink(tempFile, object);
+        Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return lastLink ? hFile.size : 0L;
+    }
+
+    private Path getObjectFile(String name) {
+        return dir.resolve(name.substring(0, 2)).resolve(name);
+    }
+
+    private HashIndex scan() throws IOException {
+        HashIndex storedIndex = readIndex();
+        HashIndex newIndex = new HashIndex();
+        try (DirectoryStream<Path> prefixStream = Files.newDirectoryStream(dir)) {
+            for (Path prefixDir : prefixStream) {
+                if (!IOHelper.isDir(prefixDir)) {
+                    continue;
+                }
+                try (DirectoryStream<Path> objectStream = Files.newDirectoryStream(prefixDir)) {
+                    for (Path object : objectStream) {
+                        String name = IOHelper.getFileName(object);
+                        byte[] digest;
+                        try {
+                            digest = SecurityHelper.fromHex(name);
+                        } catch (IllegalArgumentException e) {
+                            LogHelper.subWarning("Not store object: '%s'", object);
+                            continue;
+                        }
+
+                        // Verify content if object was changed since last scan (e.g. edited while server was down)
+                        BasicFileAttributes attrs = IOHelper.readAttributes(object);
+                        byte[] storedDigest = storedIndex.get(name, attrs);
+                        if (storedDigest == null || !Arrays.equals(digest, storedDigest)) {
+                            if (!Arrays.equals(digest, SecurityHelper.digest(HashedFile.DIGEST_ALGO, object))) {
+                                LogHelper.subWarning("Store object was modified, unlinking: '%s'", object);
+                                Files.delete(object); // Linked update files will be rehashed
+                                continue;
+                            }
+                        }
+                        newIndex.put(name, attrs, digest);
+                    }
+                }
+            }
+        }
+        return newIndex;
+    }
+
+    private HashIndex readIndex() {
+        Path file = dir.resolve(INDEX_FILE);
+        if (!IOHelper.isFile(file)) {
+            return new HashIndex();
+        }
+        try (HInput input = new HInput(IOHelper.read(file))) {
+            return new HashIndex(input);
+        } catch (IOException e) {
+            LogHelper.error(e);
+            return new HashIndex(); // Corrupted, verify all objects
+        }
+    }
+
+    private void writeIndex() throws IOException {
+        Path file = dir.resolve(INDEX_FILE);
+        Path tempFile = file.resolveSibling(INDEX_FILE + ".tmp");
+        IOHelper.write(tempFile, index.write());
+        Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private static void collectDigests(HashedDir hdir, Set<String> digests) {
+        for (HashedEntry entry : hdir.map().values()) {
+            switch (entry.getType()) {
+                case FILE:
+                    byte[] digest = ((HashedFile) entry).getDigest();
+                    if (digest != null) {
+                        digests.add(SecurityHelper.toHex(digest));
+                    }
+                    break;
+                case DIR:
+                    collectDigests((HashedDir) entry, digests);
+                    break;
+                default:
+                    throw new AssertionError("Unsupported hashed entry type: " + entry.getType().name());
+            }
+        }
+    }
+
+    private static boolean contentEquals(Path a, Path b, long size) throws IOException {
+        try (FileChannel channelA = FileChannel.open(a, StandardOpenOption.READ);
+             FileChannel channelB = FileChannel.open(b, StandardOpenOption.READ)) {
+            if (channelA.size() != size || channelB.size() != size) {
+                return false;
+            }
+
+            // Compare chunk by chunk (MD5 alone isn't enough to merge files)
+            ByteBuffer bufferA = ByteBuffer.allocate(IOHelper.BUFFER_SIZE);
+            ByteBuffer bufferB = ByteBuffer.allocate(IOHelper.BUFFER_SIZE);
+            for (long position = 0L; position < size; position += bufferA.limit()) {
+                bufferA.clear();
+                bufferB.clear();
+                readFully(channelA, bufferA, position);
+                readFully(channelB, bufferB, position);
+                if (!bufferA.hasRemaining() || !bufferA.equals(bufferB)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private static long getLinkCount(Path file) {
+        try {
+            return ((Number) Files.getAttribute(file, "unix:nlink")).longValue();
+        } catch (IOException | UnsupportedOperationException | IllegalArgumentException e) {
+            return 1L; // Can't tell, assume not shared
+        }
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                break; // Truncated, sizes will differ
+            }
+        }
+        buffer.flip();
+    }
+}
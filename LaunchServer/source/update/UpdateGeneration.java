@@ -0,0 +1,111 @@
+package launchserver.update;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import launcher.LauncherAPI;
+import launcher.hasher.HashedDir;
+import launcher.helper.IOHelper;
+import launcher.helper.LogHelper;
+import launcher.serialize.signed.SignedObjectHolder;
+
+public final class UpdateGeneration {
+    @LauncherAPI public final String name;
+    @LauncherAPI public final SignedObjectHolder<HashedDir> hdir;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock(true); // Fair, so publish won't starve
+    private final AtomicInteger sessions = new AtomicInteger(0); // -1 if reclaimed
+    private volatile Path dir;
+    private volatile boolean owned; // Moved out of updates dir, so delete on reclaim
+    private volatile boolean retired;
+
+    @LauncherAPI
+    public UpdateGeneration(String name, SignedObjectHolder<HashedDir> hdir, Path dir) {
+        this.name = name;
+        this.hdir = hdir;
+        this.dir = dir;
+    }
+
+    @LauncherAPI
+    public Path getDir() {
+        return dir;
+    }
+
+    @LauncherAPI
+    public Lock getFileLock() {
+        return lock.readLock();
+    }
+
+    @LauncherAPI
+    public int getSessions() {
+        return Math.max(sessions.get(), 0);
+    }
+
+    @LauncherAPI
+    public boolean isRetired() {
+        return retired;
+    }
+
+    @LauncherAPI
+    public void moveTo(Path target) throws IOException {
+        // Wait for in-flight file actions, sessions will resolve files from new location
+        Lock writeLock = lock.writeLock();
+        writeLock.lock();
+        try {
+            Files.move(dir, target, StandardCopyOption.ATOMIC_MOVE);
+            dir = target;
+            owned = true;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @LauncherAPI
+    public boolean pin() {
+        while (true) {
+            int count = sessions.get();
+            if (count < 0) {
+                return false; // Already reclaimed
+            }
+            if (sessions.compareAndSet(count, count + 1)) {
+                return true;
+            }
+        }
+    }
+
+    @LauncherAPI
+    public void release() {
+        if (sessions.decrementAndGet() == 0 && retired) {
+            reclaim();
+        }
+    }
+
+    @LauncherAPI
+    public void retire() {
+        retired = true;
+        if (sessions.get() == 0) {
+            reclaim();
+        }
+    }
+
+    private void reclaim() {
+        if (!sessions.compareAndSet(0, -1)) {
+            return; // Pinned again or already reclaimed
+        }
+
+        // Delete old dir version (if it isn't live dir)
+        if (owned) {
+            LogHelper.debug("Reclaiming '%s' update dir generation: '%s'", name, dir);
+            try {
+                IOHelper.deleteDir(dir, true);
+            } catch (IOException e) {
+                LogHelper.error(e);
+            }
+        }
+    }
+}
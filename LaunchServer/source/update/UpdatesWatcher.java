@@ -0,0 +1,239 @@
+package launchserver.update;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchEvent.Kind;
+import java.nio.file.WatchEvent.Modifier;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import com.sun.nio.file.ExtendedWatchEventModifier;
+import com.sun.nio.file.SensitivityWatchEventModifier;
+import launcher.LauncherAPI;
+import launcher.hasher.HashedDir;
+import launcher.hasher.HashedEntry;
+import launcher.hasher.HashedFile;
+import launcher.helper.IOHelper;
+import launcher.helper.JVMHelper;
+import launcher.helper.JVMHelper.OS;
+import launcher.helper.LogHelper;
+import launcher.serialize.signed.SignedObjectHolder;
+import launchserver.LaunchServer;
+
+public final class UpdatesWatcher implements Runnable, AutoCloseable {
+    private static final boolean FILE_TREE_SUPPORTED = JVMHelper.OS_TYPE == OS.MUSTDIE;
+    private static final long SETTLE_DELAY = 3000L; // Wait for copying to finish before resync
+
+    // Constants
+    private static final Modifier[] MODIFIERS = {
+        SensitivityWatchEventModifier.HIGH
+    };
+    private static final Modifier[] FILE_TREE_MODIFIERS = {
+        ExtendedWatchEventModifier.FILE_TREE, SensitivityWatchEventModifier.HIGH
+    };
+    private static final Kind<?>[] KINDS = {
+        StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE
+    };
+
+    // Instance
+    private final LaunchServer server;
+    private final WatchService service;
+
+    // Collected changes
+    private final Set<Path> changedUpdates = new HashSet<>(16);
+    private boolean changedProfiles;
+    private boolean overflow;
+
+    @LauncherAPI
+    public UpdatesWatcher(LaunchServer server) throws IOException {
+        this.server = server;
+        service = server.updatesDir.getFileSystem().newWatchService();
+        register(server.updatesDir);
+        register(server.profilesDir);
+    }
+
+    @Override
+    @LauncherAPI
+    public void close() throws IOException {
+        service.close();
+    }
+
+    @Override
+    @LauncherAPI
+    public void run() {
+        try {
+            processLoop();
+        } catch (InterruptedException | ClosedWatchServiceException ignored) {
+            // Do nothing (closed etc)
+        } catch (Throwable exc) {
+            LogHelper.error(exc);
+        }
+    }
+
+    private void applyChanges() throws IOException {
+        if (overflow) { // Lost some events, resync everything
+            LogHelper.warning("Updates watcher overflow, full resync");
+            server.syncUpdatesDir(null);
+            server.syncProfilesDir();
+            return;
+        }
+        if (changedProfiles) {
+            server.syncProfilesDir();
+        }
+
+        // Group changes by update dir
+        Set<String> resyncDirs = new HashSet<>(4);
+        Map<String, List<Path>> patchDirs = new HashMap<>(4);
+        for (Path path : changedUpdates) {
+            String name = IOHelper.getFileName(path.getName(0));
+            if (path.getNameCount() == 1) {
+                resyncDirs.add(name); // Whole update dir was added, removed or replaced
+            } else {
+                patchDirs.computeIfAbsent(name, k -> new ArrayList<>(4)).add(path.subpath(1, path.getNameCount()));
+            }
+        }
+        patchDirs.keySet().removeAll(resyncDirs);
+
+        // Apply changes
+        if (!resyncDirs.isEmpty()) {
+            server.syncUpdatesDir(resyncDirs);
+        }
+        for (Map.Entry<String, List<Path>> entry : patchDirs.entrySet()) {
+            patchUpdateDir(entry.getKey(), entry.getValue());
+        }
+    }
+
+    private void patchUpdateDir(String name, List<Path> paths) throws IOException {
+        long start = System.currentTimeMillis();
+        Path updateDir = server.updatesDir.resolve(name);
+        List<Path> minimized = minimize(paths);
+        synchronized (server) {
+            SignedObjectHolder<HashedDir> hdir = server.getUpdateDir(name);
+            if (hdir == null) { // Not synced yet
+                server.syncUpdatesDir(Collections.singleton(name));
+                return;
+            }
+
+            // Rehash only changed entries
+            HashedDir patched = hdir.object;
+            for (Path path : minimized) {
+                Path file = updateDir.resolve(path);
+                HashedEntry entry = null;
+                if (IOHelper.exists(file)) {
+                    BasicFileAttributes attrs = IOHelper.readAttributes(file);
+                    entry = attrs.isDirectory() ? new HashedDir(file, null, true, true) : new HashedFile(file, attrs.size(), true);
+                }
+                patched = patched.patch(toList(path), entry);
+            }
+            server.setUpdateDir(name, patched);
+        }
+        LogHelper.info("Patched '%s' update dir (%d changes) in %dms", name, minimized.size(), System.currentTimeMillis() - start);
+    }
+
+    private void processKey(WatchKey key) throws IOException {
+        Path watchDir = (Path) key.watchable();
+        for (WatchEvent<?> event : key.pollEvents()) {
+            Kind<?> kind = event.kind();
+            if (kind.equals(StandardWatchEventKinds.OVERFLOW)) {
+                overflow = true;
+                continue;
+            }
+
+            // Resolve changed path
+            Path path = watchDir.resolve((Path) event.context());
+            if (path.startsWith(server.profilesDir)) {
+                changedProfiles = true;
+                continue;
+            }
+            boolean isDir = IOHelper.isDir(path);
+            if (kind.equals(StandardWatchEventKinds.ENTRY_MODIFY) && isDir) {
+                continue; // Children changes are reported separately
+            }
+            changedUpdates.add(server.updatesDir.relativize(path));
+
+            // Watch newly created dirs
+            if (!FILE_TREE_SUPPORTED && kind.equals(StandardWatchEventKinds.ENTRY_CREATE) && isDir) {
+                register(path);
+            }
+        }
+        key.reset();
+    }
+
+    private void processLoop() throws IOException, InterruptedException {
+        LogHelper.info("Watching updates and profiles dirs");
+        while (!Thread.interrupted()) {
+            // Collect changes until dirs are quiet for a while
+            WatchKey key = service.take();
+            do {
+                processKey(key);
+                key = service.poll(SETTLE_DELAY, TimeUnit.MILLISECONDS);
+            } while (key != null);
+
+            // Resync changed entries
+            try {
+                applyChanges();
+            } catch (IOException e) {
+                LogHelper.error(e);
+            } finally {
+                changedUpdates.clear();
+                changedProfiles = false;
+                overflow = false;
+            }
+        }
+    }
+
+    private void register(Path dir) throws IOException {
+        if (FILE_TREE_SUPPORTED) {
+            dir.register(service, KINDS, FILE_TREE_MODIFIERS);
+            return;
+        }
+
+        // Register dirs recursively
+        IOHelper.walk(dir, new RegisterFileVisitor(), true);
+    }
+
+    private static List<Path> minimize(List<Path> paths) {
+        paths.sort(Comparator.comparingInt(Path::getNameCount));
+
+        // Skip paths which are inside of other changed dirs
+        List<Path> minimized = new ArrayList<>(paths.size());
+        for (Path path : paths) {
+            if (minimized.stream().noneMatch(path::startsWith)) {
+                minimized.add(path);
+            }
+        }
+        return minimized;
+    }
+
+    private static List<String> toList(Path path) {
+        List<String> list = new ArrayList<>(path.getNameCount());
+        for (Path name : path) {
+            list.add(IOHelper.getFileName(name));
+        }
+        return list;
+    }
+
+    private final class RegisterFileVisitor extends SimpleFileVisitor<Path> {
+        @Override
+        public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+            FileVisitResult result = super.preVisitDirectory(dir, attrs);
+            dir.register(service, KINDS, MODIFIERS);
+            return result;
+        }
+    }
+}
@@ -168,6 +168,34 @@ function doAuth(profile, login, rsaPassword) {
 }
 
 function doUpdate(profile, pp, accessToken) {
+    if (settings.offline) {
+        doUpdateDirs(profile, pp, accessToken);
+        return;
+    }
+
+    // Resolve cached dirs
+    var digest = profile.object.isUpdateFastCheck();
+    var assetDirName = profile.object.block.getEntryValue("assetDir", StringConfigEntryClass);
+    var clientDirName = profile.object.block.getEntryValue("dir", StringConfigEntryClass);
+    var dirs = [
+        { name: jvmDirName, dir: settings.updatesDir.resolve(jvmDirName), matcher: null },
+        { name: assetDirName, dir: settings.updatesDir.resolve(assetDirName), matcher: profile.object.getAssetUpdateMatcher() },
+        { name: clientDirName, dir: settings.updatesDir.resolve(clientDirName), matcher: profile.object.getClientUpdateMatcher() }
+    ];
+
+    // Check all dirs at once, launch right away if nothing changed
+    update.resetOverlay("Проверка обновлений");
+    overlay.swap(0, update.overlay, function(event) makeUpdateCheckRequest(dirs, digest, function(current) {
+        if (!current) {
+            doUpdateDirs(profile, pp, accessToken);
+            return;
+        }
+        doLaunchClient(dirs[0].dir, settings.lastHDirs.get(jvmDirName), dirs[1].dir, settings.lastHDirs.get(assetDirName),
+            dirs[2].dir, settings.lastHDirs.get(clientDirName), profile, pp, accessToken);
+    }));
+}
+
+function doUpdateDirs(profile, pp, accessToken) {
     var digest = profile.object.isUpdateFastCheck();
 
     // Update JVM dir
@@ -85,10 +85,57 @@ function offlineUpdateRequest(dirName, dir, matcher, digest) {
     };
 }
 
+function updateCheckRequest(dirs, digest) {
+    return function() {
+        var cachedHDirs = new java.util.HashMap(4);
+        for each (var dir in dirs) {
+            cachedHDirs.put(dir.name, settings.lastHDirs.get(dir.name));
+        }
+        if (!new UpdateCheckRequest(cachedHDirs).request().isEmpty()) {
+            return false;
+        }
+
+        // Compare dirs with cached hdirs like UpdateRequest does (launch will verify them anyway)
+        for each (var dir in dirs) {
+            try {
+                var currentHDir = HashIndexStore.hashDir(dir.dir, dir.matcher, digest);
+                if (!cachedHDirs.get(dir.name).object.diff(currentHDir, dir.matcher).isSame()) {
+                    LogHelper.debug("Update dir '%s' was modified", dir.name);
+                    HashIndexStore.invalidate(dir.dir);
+                    return false;
+                }
+            } catch (e) {
+                LogHelper.debug("Update dir '%s' hashing failed: %s", dir.name, e);
+                return false;
+            }
+        }
+        return true;
+    };
+}
+
 /* Export functions */
+function makeUpdateCheckRequest(dirs, digest, callback) {
+    var task = newTask(updateCheckRequest(dirs, digest));
+
+    // Set task properties and start (on failure just do full update)
+    update.description.textProperty().bind(task.messageProperty());
+    task.setOnFailed(function(event) {
+        update.description.textProperty().unbind();
+        LogHelper.error(task.getException());
+        callback(false);
+    });
+    task.setOnSucceeded(function(event) {
+        update.description.textProperty().unbind();
+        callback(task.getValue());
+    });
+    task.updateMessage("Состояние: Проверка обновлений");
+    task.updateProgress(-1, -1);
+    startTask(task);
+}
+
 function makeUpdateRequest(dirName, dir, matcher, digest, callback) {
     var request = settings.offline ? { setStateCallback: function(stateCallback) { /* Ignored */ } } :
-        new UpdateRequest(dirName, dir, matcher, digest);
+        new UpdateRequest(dirName, dir, matcher, digest, settings.lastHDirs.get(dirName));
     var task = settings.offline ? newTask(offlineUpdateRequest(dirName, dir, matcher, digest)) :
         newRequestTask(request);
 
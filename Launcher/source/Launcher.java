@@ -31,6 +31,7 @@ import launcher.client.PlayerProfile;
 import launcher.client.PlayerProfile.Texture;
 import launcher.client.ServerPinger;
 import launcher.hasher.FileNameMatcher;
+import launcher.hasher.HashIndexStore;
 import launcher.hasher.HashedDir;
 import launcher.hasher.HashedEntry;
 import launcher.hasher.HashedFile;
@@ -52,6 +53,7 @@ import launcher.request.auth.AuthRequest;
 import launcher.request.auth.CheckServerRequest;
 import launcher.request.auth.JoinServerRequest;
 import launcher.request.update.LauncherRequest;
+import launcher.request.update.UpdateCheckRequest;
 import launcher.request.update.UpdateRequest;
 import launcher.request.uuid.BatchProfileByUsernameRequest;
 import launcher.request.uuid.ProfileByUUIDRequest;
@@ -80,6 +82,7 @@ public final class Launcher {
     @LauncherAPI public static final String VERSION = "15.4";
     @LauncherAPI public static final String BUILD = readBuildNumber();
     @LauncherAPI public static final int PROTOCOL_MAGIC = 0x724724_00 + 23;
+    @LauncherAPI public static final int SESSION_MAGIC = PROTOCOL_MAGIC | 0x80000000; // Multiplexed requests
 
     // Constants
     @LauncherAPI public static final String RUNTIME_DIR = "runtime";
@@ -148,6 +151,7 @@ public final class Launcher {
         addClassBinding(engine, bindings, "JoinServerRequest", JoinServerRequest.class);
         addClassBinding(engine, bindings, "CheckServerRequest", CheckServerRequest.class);
         addClassBinding(engine, bindings, "UpdateRequest", UpdateRequest.class);
+        addClassBinding(engine, bindings, "UpdateCheckRequest", UpdateCheckRequest.class);
         addClassBinding(engine, bindings, "LauncherRequest", LauncherRequest.class);
         addClassBinding(engine, bindings, "ProfileByUsernameRequest", ProfileByUsernameRequest.class);
         addClassBinding(engine, bindings, "ProfileByUUIDRequest", ProfileByUUIDRequest.class);
@@ -155,6 +159,7 @@ public final class Launcher {
 
         // Set hasher class bindings
         addClassBinding(engine, bindings, "FileNameMatcher", FileNameMatcher.class);
+        addClassBinding(engine, bindings, "HashIndexStore", HashIndexStore.class);
         addClassBinding(engine, bindings, "HashedDir", HashedDir.class);
         addClassBinding(engine, bindings, "HashedFile", HashedFile.class);
         addClassBinding(engine, bindings, "HashedEntryType", HashedEntry.Type.class);
@@ -287,12 +292,17 @@ public final class Launcher {
         @LauncherAPI
         public final Map<String, byte[]> runtime;
 
+        // Cached values
+        @LauncherAPI
+        public final byte[] keyFingerprint;
+
         @LauncherAPI
         @SuppressWarnings("AssignmentToCollectionOrArrayFieldFromParameter")
         public Config(String address, int port, RSAPublicKey publicKey, Map<String, byte[]> runtime) {
             this.address = InetSocketAddress.createUnresolved(address, port);
             this.publicKey = Objects.requireNonNull(publicKey, "publicKey");
             this.runtime = Collections.unmodifiableMap(new HashMap<>(runtime));
+            keyFingerprint = SecurityHelper.getKeyFingerprint(publicKey);
         }
 
         @LauncherAPI
@@ -312,6 +322,7 @@ public final class Launcher {
                     String.format("Duplicate runtime resource: '%s'", name));
             }
             runtime = Collections.unmodifiableMap(localResources);
+            keyFingerprint = SecurityHelper.getKeyFingerprint(publicKey);
 
             // Print warning if address override is enabled
             if (ADDRESS_OVERRIDE != null) {
@@ -33,6 +33,7 @@ import launcher.LauncherAPI;
 import launcher.client.ClientProfile.Version;
 import launcher.hasher.DirWatcher;
 import launcher.hasher.FileNameMatcher;
+import launcher.hasher.HashIndexStore;
 import launcher.hasher.HashedDir;
 import launcher.helper.CommonHelper;
 import launcher.helper.IOHelper;
@@ -223,8 +224,10 @@ public final class ClientLauncher {
         }
 
         // Hash directory and compare (ignore update-only matcher entries, it will break offline-mode)
+        // Don't trust hash index here: its key is readable by user, so it only speeds up update rehashing
         HashedDir currentHDir = new HashedDir(dir, matcher, false, digest);
         if (!hdir.diff(currentHDir, matcher).isSame()) {
+            HashIndexStore.invalidate(dir); // So update won't trust stale index
             throw new SecurityException(String.format("Forbidden modification: '%s'", IOHelper.getFileName(dir)));
         }
     }
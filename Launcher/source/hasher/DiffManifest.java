@@ -0,0 +1,169 @@
+package launcher.hasher;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map.Entry;
+
+import launcher.LauncherAPI;
+import launcher.hasher.HashedDir.Diff;
+import launcher.hasher.HashedEntry.Type;
+import launcher.helper.IOHelper;
+import launcher.serialize.HInput;
+import launcher.serialize.HOutput;
+import launcher.serialize.stream.StreamObject;
+
+public final class DiffManifest extends StreamObject {
+    private final List<List<String>> mismatch; // Paths of new entries
+    private final List<List<String>> extra; // Paths of removed entries
+
+    @LauncherAPI
+    public DiffManifest(HashedDir from, HashedDir to) {
+        Diff diff = to.diff(from, null);
+        mismatch = new ArrayList<>(16);
+        extra = new ArrayList<>(16);
+        collectPaths(diff.mismatch, to, new LinkedList<>(), mismatch);
+        collectPaths(diff.extra, from, new LinkedList<>(), extra);
+    }
+
+    @LauncherAPI
+    public DiffManifest(HInput input) throws IOException {
+        mismatch = readPaths(input);
+        extra = readPaths(input);
+    }
+
+    @Override
+    public void write(HOutput output) throws IOException {
+        writePaths(output, mismatch);
+        writePaths(output, extra);
+    }
+
+    @LauncherAPI
+    public int size() {
+        return mismatch.size() + extra.size();
+    }
+
+    @LauncherAPI
+    public Diff toDiff(HashedDir remote, HashedDir local, FileNameMatcher matcher) throws IOException {
+        // Local dir should be verified against manifest's 'from' dir, so only matcher rules are left
+        HashedDir newMismatch = new HashedDir();
+        for (List<String> path : mismatch) {
+            HashedEntry remoteEntry = remote.resolve(path);
+            if (remoteEntry == null) {
+                throw new IOException("Manifest entry isn't in update dir: " + String.join(IOHelper.CROSS_SEPARATOR, path));
+            }
+            if (!isDirPath(local, path)) {
+                return null; // Local entry type differs, let full diff decide
+            }
+            HashedEntry localEntry = local.resolve(path);
+            if (remoteEntry.getType() == Type.DIR && localEntry != null) {
+                return null; // Local dir wasn't in 'from' dir, let full diff decide
+            }
+            if (localEntry == null || matcher == null || matcher.shouldUpdate(path)) {
+                put(newMismatch, path, remoteEntry);
+            }
+        }
+
+        // Deleted entries (only on update paths, like full diff)
+        HashedDir newExtra = new HashedDir();
+        for (List<String> path : extra) {
+            HashedEntry remoteEntry = remote.resolve(path);
+            HashedEntry localEntry = local.resolve(path);
+            if (localEntry == null || !shouldUpdateAll(matcher, path)) {
+                continue;
+            }
+            if (remoteEntry != null && remoteEntry.getType() == localEntry.getType()) {
+                throw new IOException("Manifest deletes update dir entry: " + String.join(IOHelper.CROSS_SEPARATOR, path));
+            }
+            localEntry.flag = true;
+            put(newExtra, path, localEntry);
+        }
+        return new Diff(newMismatch, newExtra);
+    }
+
+    private static void collectPaths(HashedDir diff, HashedDir source, LinkedList<String> path, List<List<String>> paths) {
+        for (Entry<String, HashedEntry> mapEntry : diff.map().entrySet()) {
+            path.add(mapEntry.getKey());
+
+            // Whole entries are taken from source dir as-is, others are diff containers
+            HashedEntry entry = mapEntry.getValue();
+            if (entry.getType() == Type.FILE || entry == source.resolve(path)) {
+                paths.add(Collections.unmodifiableList(new ArrayList<>(path)));
+            } else {
+                collectPaths((HashedDir) entry, source, path, paths);
+            }
+            path.removeLast();
+        }
+    }
+
+    private static boolean isDirPath(HashedDir dir, List<String> path) {
+        HashedEntry current = dir;
+        for (String name : path.subList(0, path.size() - 1)) {
+            if (current.getType() != Type.DIR) {
+                return false;
+            }
+            current = ((HashedDir) current).getEntry(name);
+            if (current == null) {
+                return true;
+            }
+        }
+        return current.getType() == Type.DIR;
+    }
+
+    private static void put(HashedDir root, List<String> path, HashedEntry entry) throws IOException {
+        HashedDir current = root;
+        for (String name : path.subList(0, path.size() - 1)) {
+            HashedEntry child = current.map.computeIfAbsent(name, n -> new HashedDir());
+            if (child.getType() != Type.DIR) {
+                throw new IOException("Overlapping manifest entries: " + String.join(IOHelper.CROSS_SEPARATOR, path));
+            }
+            current = (HashedDir) child;
+        }
+        if (current.map.putIfAbsent(path.get(path.size() - 1), entry) != null) {
+            throw new IOException("Overlapping manifest entries: " + String.join(IOHelper.CROSS_SEPARATOR, path));
+        }
+    }
+
+    private static List<List<String>> readPaths(HInput input) throws IOException {
+        int count = input.readLength(0);
+        List<List<String>> paths = new ArrayList<>(Math.min(count, 1024));
+        for (int i = 0; i < count; i++) {
+            int length = input.readLength(255);
+            if (length == 0) {
+                throw new IOException("Empty manifest path");
+            }
+            List<String> path = new ArrayList<>(length);
+            for (int j = 0; j < length; j++) {
+                path.add(IOHelper.verifyFileName(input.readString(255)));
+            }
+            paths.add(Collections.unmodifiableList(path));
+        }
+        return paths;
+    }
+
+    private static boolean shouldUpdateAll(FileNameMatcher matcher, List<String> path) {
+        if (matcher == null) {
+            return true;
+        }
+
+        // Full diff doesn't go into dirs that shouldn't be updated
+        for (int i = 1; i <= path.size(); i++) {
+            if (!matcher.shouldUpdate(path.subList(0, i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void writePaths(HOutput output, List<List<String>> paths) throws IOException {
+        output.writeLength(paths.size(), 0);
+        for (List<String> path : paths) {
+            output.writeLength(path.size(), 255);
+            for (String name : path) {
+                output.writeString(name, 255);
+            }
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package launcher.hasher;
+
+import java.io.IOException;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import launcher.LauncherAPI;
+import launcher.serialize.HInput;
+import launcher.serialize.HOutput;
+import launcher.serialize.stream.StreamObject;
+
+public final class HashIndex extends StreamObject {
+    private static final long MIN_MODIFIED_AGE = 2000L; // Don't trust mtime of files modified right before hashing
+
+    // Instance
+    private final Map<String, IndexEntry> entries = new ConcurrentHashMap<>(256);
+    private final Map<String, IndexEntry> fileKeys = new ConcurrentHashMap<>(256);
+    private final Set<String> visited = ConcurrentHashMap.newKeySet();
+    private volatile HashIndex shared;
+
+    @LauncherAPI
+    public HashIndex() {
+    }
+
+    @LauncherAPI
+    public HashIndex(HInput input) throws IOException {
+        int count = input.readLength(0);
+        for (int i = 0; i < count; i++) {
+            String path = input.readString(0);
+            put(path, new IndexEntry(input));
+        }
+    }
+
+    @Override
+    public void write(HOutput output) throws IOException {
+        output.writeLength(entries.size(), 0);
+        for (Entry<String, IndexEntry> entry : entries.entrySet()) {
+            output.writeString(entry.getKey(), 0);
+            entry.getValue().write(output);
+        }
+    }
+
+    @LauncherAPI
+    public byte[] get(String path, BasicFileAttributes attrs) {
+        visited.add(path);
+        IndexEntry entry = entries.get(path);
+        if (entry != null && entry.matches(attrs)) {
+            return entry.digest.clone();
+        }
+
+        // Same file may be hardlinked from shared index
+        HashIndex sharedIndex = shared;
+        if (sharedIndex != null) {
+            IndexEntry sharedEntry = sharedIndex.fileKeys.get(getFileKey(attrs));
+            if (sharedEntry != null && sharedEntry.matches(attrs)) {
+                put(path, sharedEntry);
+                return sharedEntry.digest.clone();
+            }
+        }
+        return null;
+    }
+
+    @LauncherAPI
+    public void put(String path, BasicFileAttributes attrs, byte[] digest) {
+        visited.add(path);
+        long modified = attrs.lastModifiedTime().toMillis();
+        if (System.currentTimeMillis() - modified < MIN_MODIFIED_AGE) {
+            entries.remove(path); // May be modified again within mtime precision
+            return;
+        }
+        put(path, new IndexEntry(attrs.size(), modified, getFileKey(attrs), digest));
+    }
+
+    @LauncherAPI
+    public void setShared(HashIndex shared) {
+        this.shared = shared;
+    }
+
+    @LauncherAPI
+    public int size() {
+        return entries.size();
+    }
+
+    @LauncherAPI
+    public void sweep() {
+        entries.keySet().retainAll(visited);
+        fileKeys.values().retainAll(new HashSet<>(entries.values()));
+        visited.clear();
+    }
+
+    private void put(String path, IndexEntry entry) {
+        entries.put(path, entry);
+        if (!entry.fileKey.isEmpty()) {
+            fileKeys.put(entry.fileKey, entry);
+        }
+    }
+
+    private static String getFileKey(BasicFileAttributes attrs) {
+        Object fileKey = attrs.fileKey();
+        return fileKey == null ? "" : fileKey.toString();
+    }
+
+    private static final class IndexEntry extends StreamObject {
+        private final long size;
+        private final long modified;
+        private final String fileKey;
+        private final byte[] digest;
+
+        private IndexEntry(long size, long modified, String fileKey, byte[] digest) {
+            this.size = size;
+            this.modified = modified;
+            this.fileKey = fileKey;
+            this.digest = digest;
+        }
+
+        private IndexEntry(HInput input) throws IOException {
+            size = input.readVarLong();
+            modified = input.readLong();
+            fileKey = input.readString(255);
+            digest = input.readByteArray(-HashedFile.DIGEST_ALGO.bytes);
+        }
+
+        @Override
+        public void write(HOutput output) throws IOException {
+            output.writeVarLong(size);
+            output.writeLong(modified);
+            output.writeString(fileKey, 255);
+            output.writeByteArray(digest, -HashedFile.DIGEST_ALGO.bytes);
+        }
+
+        private boolean matches(BasicFileAttributes attrs) {
+            return size == attrs.size() && modified == attrs.lastModifiedTime().toMillis() &&
+                fileKey.equals(getFileKey(attrs));
+        }
+    }
+}
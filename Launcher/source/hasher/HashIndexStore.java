@@ -0,0 +1,165 @@
+package launcher.hasher;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.prefs.BackingStoreException;
+import java.util.prefs.Preferences;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import launcher.LauncherAPI;
+import launcher.helper.IOHelper;
+import launcher.helper.LogHelper;
+import launcher.helper.SecurityHelper;
+import launcher.serialize.HInput;
+import launcher.serialize.HOutput;
+
+public final class HashIndexStore {
+    @LauncherAPI public static final boolean ENABLED = Boolean.parseBoolean(
+        System.getProperty("launcher.hashIndex", Boolean.toString(true)));
+    @LauncherAPI public static final long FULL_VERIFY_PERIOD = TimeUnit.DAYS.toMillis(7);
+    private static final String MAC_ALGO = "HmacSHA256";
+    private static final int MAC_LENGTH = 256 / Byte.SIZE;
+    private static final String KEY_PREFERENCE = "hashIndexKey";
+    private static final String INDEX_SUFFIX = ".index";
+
+    // Per-user MAC key (lazy). It only detects corrupted or foreign indexes: user can read it from
+    // preferences and forge index, so index just speeds up update rehashing and isn't a security boundary
+    private static byte[] key;
+
+    private HashIndexStore() {
+    }
+
+    @LauncherAPI
+    public static HashedDir hashDir(Path dir, FileNameMatcher matcher, boolean digest) throws IOException {
+        if (!ENABLED || !digest) {
+            return new HashedDir(dir, matcher, false, digest);
+        }
+
+        // Read stored index (rehash everything if invalid or expired)
+        Path indexFile = getIndexFile(dir);
+        long now = System.currentTimeMillis();
+        Stored stored = read(dir, indexFile);
+        boolean fullVerify = stored == null || stored.verified > now || now - stored.verified >= FULL_VERIFY_PERIOD;
+        HashIndex index = fullVerify ? new HashIndex() : stored.index;
+
+        // Hash dir, digesting only changed files
+        HashedDir hdir = new HashedDir(dir, matcher, false, true, index);
+        index.sweep();
+
+        // Store updated index (it's just a cache, so ignore failures)
+        try {
+            write(dir, indexFile, index, fullVerify ? now : stored.verified);
+        } catch (IOException e) {
+            LogHelper.debug("Can't store hash index of '%s': %s", IOHelper.getFileName(dir), e);
+        }
+        return hdir;
+    }
+
+    @LauncherAPI
+    public static void invalidate(Path dir) {
+        // File may have changed without changing attributes, so next hashing will digest everything
+        try {
+            Files.deleteIfExists(getIndexFile(dir));
+        } catch (IOException e) {
+            LogHelper.debug("Can't delete hash index of '%s': %s", IOHelper.getFileName(dir), e);
+        }
+    }
+
+    private static Path getIndexFile(Path dir) {
+        Path absDir = dir.toAbsolutePath().normalize();
+        return absDir.resolveSibling('.' + IOHelper.getFileName(absDir) + INDEX_SUFFIX);
+    }
+
+    private static synchronized byte[] getKey() {
+        if (key != null) {
+            return key;
+        }
+
+        // Load or generate per-user key
+        Preferences preferences = Preferences.userNodeForPackage(HashIndexStore.class);
+        byte[] storedKey = preferences.getByteArray(KEY_PREFERENCE, null);
+        if (storedKey != null && storedKey.length == MAC_LENGTH) {
+            key = storedKey;
+            return key;
+        }
+        key = SecurityHelper.randomBytes(MAC_LENGTH);
+        preferences.putByteArray(KEY_PREFERENCE, key);
+        try {
+            preferences.flush();
+        } catch (BackingStoreException e) { // Stored indexes will be just invalid next time
+            LogHelper.debug("Can't store hash index key: %s", e);
+        }
+        return key;
+    }
+
+    private static byte[] mac(Path dir, byte[] bytes, int length) {
+        try {
+            Mac mac = Mac.getInstance(MAC_ALGO);
+            mac.init(new SecretKeySpec(getKey(), MAC_ALGO));
+            mac.update(dir.toAbsolutePath().normalize().toString().getBytes(StandardCharsets.UTF_8));
+            mac.update(bytes, 0, length);
+            return mac.doFinal();
+        } catch (GeneralSecurityException e) {
+            throw new InternalError(e);
+        }
+    }
+
+    private static Stored read(Path dir, Path indexFile) {
+        if (!IOHelper.isFile(indexFile)) {
+            return null;
+        }
+        try {
+            byte[] bytes = IOHelper.read(indexFile);
+            int length = bytes.length - MAC_LENGTH;
+            if (length < 0 || !MessageDigest.isEqual(mac(dir, bytes, length), Arrays.copyOfRange(bytes, length, bytes.length))) {
+                LogHelper.warning("Hash index of '%s' was modified, rehashing", IOHelper.getFileName(dir));
+                return null;
+            }
+
+            // Read verified index
+            try (HInput input = new HInput(Arrays.copyOf(bytes, length))) {
+                long verified = input.readLong();
+                return new Stored(verified, new HashIndex(input));
+            }
+        } catch (IOException e) {
+            LogHelper.debug("Can't read hash index of '%s': %s", IOHelper.getFileName(dir), e);
+            return null;
+        }
+    }
+
+    private static void write(Path dir, Path indexFile, HashIndex index, long verified) throws IOException {
+        byte[] bytes;
+        try (ByteArrayOutputStream array = IOHelper.newByteArrayOutput()) {
+            try (HOutput output = new HOutput(array)) {
+                output.writeLong(verified);
+                index.write(output);
+            }
+            array.write(mac(dir, array.toByteArray(), array.size()));
+            bytes = array.toByteArray();
+        }
+
+        // Replace atomically, so interrupted write won't corrupt index
+        Path tempFile = indexFile.resolveSibling(IOHelper.getFileName(indexFile) + ".tmp");
+        IOHelper.write(tempFile, bytes);
+        Files.move(tempFile, indexFile, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private static final class Stored {
+        private final long verified;
+        private final HashIndex index;
+
+        private Stored(long verified, HashIndex index) {
+            this.verified = verified;
+            this.index = index;
+        }
+    }
+}
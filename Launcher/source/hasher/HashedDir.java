@@ -1,27 +1,50 @@
 package launcher.hasher;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.nio.file.FileVisitResult;
 import java.nio.file.Path;
 import java.nio.file.SimpleFileVisitor;
 import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Deque;
 import java.util.HashMap;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Predicate;
 
 import launcher.LauncherAPI;
 import launcher.helper.IOHelper;
+import launcher.helper.JVMHelper;
+import launcher.helper.SecurityHelper;
+import launcher.helper.SecurityHelper.DigestAlgorithm;
 import launcher.helper.VerifyHelper;
 import launcher.serialize.HInput;
 import launcher.serialize.HOutput;
 import launcher.serialize.stream.EnumSerializer;
 
 public final class HashedDir extends HashedEntry {
-    private final Map<String, HashedEntry> map = new HashMap<>(32);
+    @LauncherAPI public static final int HASH_THREADS = VerifyHelper.verifyInt(
+        Integer.parseInt(System.getProperty("launcher.hashThreads", Integer.toString(JVMHelper.RUNTIME.availableProcessors()))),
+        VerifyHelper.POSITIVE, "launcher.hashThreads can't be <= 0");
+    private static final ForkJoinPool HASH_POOL = HASH_THREADS > 1 ? new ForkJoinPool(HASH_THREADS) : null;
+
+    // Merkle hash and stubbed serialization constants
+    @LauncherAPI public static final DigestAlgorithm HASH_ALGO = DigestAlgorithm.SHA256;
+    @LauncherAPI public static final int STUBBED_VERSION = 1;
+    private static final Predicate<HashedDir> STUB_ALL = d -> true;
+
+    // Instance
+    /*package*/ final Map<String, HashedEntry> map = new HashMap<>(32);
+    private volatile byte[] hash; // Lazy, dir isn't modified after construction
 
     @LauncherAPI
     public HashedDir() {
@@ -29,32 +52,25 @@ public final class HashedDir extends HashedEntry {
 
     @LauncherAPI
     public HashedDir(Path dir, FileNameMatcher matcher, boolean allowSymlinks, boolean digest) throws IOException {
-        IOHelper.walk(dir, new HashFileVisitor(dir, matcher, allowSymlinks, digest), true);
+        this(dir, matcher, allowSymlinks, digest, null);
     }
 
     @LauncherAPI
-    public HashedDir(HInput input) throws IOException {
-        int entriesCount = input.readLength(0);
-        for (int i = 0; i < entriesCount; i++) {
-            String name = IOHelper.verifyFileName(input.readString(255));
+    public HashedDir(Path dir, FileNameMatcher matcher, boolean allowSymlinks, boolean digest, HashIndex index) throws IOException {
+        HashFileVisitor visitor = new HashFileVisitor(dir, matcher, allowSymlinks, digest, index);
+        IOHelper.walk(dir, visitor, true);
+        visitor.joinPending();
+    }
 
-            // Read entry
-            HashedEntry entry;
-            Type type = Type.read(input);
-            switch (type) {
-                case FILE:
-                    entry = new HashedFile(input);
-                    break;
-                case DIR:
-                    entry = new HashedDir(input);
-                    break;
-                default:
-                    throw new AssertionError("Unsupported hashed entry type: " + type.name());
-            }
+    @LauncherAPI
+    public HashedDir(HInput input) throws IOException {
+        read(input, null);
+    }
 
-            // Try add entry to map
-            VerifyHelper.putIfAbsent(map, name, entry, String.format("Duplicate dir entry: '%s'", name));
-        }
+    @LauncherAPI
+    public HashedDir(HInput input, Map<String, HashedDir> subtrees) throws IOException {
+        VerifyHelper.verifyInt(input.readVarInt(), v -> v == STUBBED_VERSION, "Unsupported stubbed hdir version");
+        read(input, subtrees);
     }
 
     @Override
@@ -69,16 +85,13 @@ public final class HashedDir extends HashedEntry {
 
     @Override
     public void write(HOutput output) throws IOException {
-        Set<Entry<String, HashedEntry>> entries = map.entrySet();
-        output.writeLength(entries.size(), 0);
-        for (Entry<String, HashedEntry> mapEntry : entries) {
-            output.writeString(mapEntry.getKey(), 255);
+        writeEntries(output, null);
+    }
 
-            // Write hashed entry
-            HashedEntry entry = mapEntry.getValue();
-            EnumSerializer.write(output, entry.getType());
-            entry.write(output);
-        }
+    @LauncherAPI
+    public void write(HOutput output, Set<String> knownHashes) throws IOException {
+        output.writeVarInt(STUBBED_VERSION);
+        writeEntries(output, d -> knownHashes.contains(SecurityHelper.toHex(d.hash())));
     }
 
     @LauncherAPI
@@ -93,6 +106,18 @@ public final class HashedDir extends HashedEntry {
         return map.get(name);
     }
 
+    @LauncherAPI
+    public byte[] getHash() {
+        return hash().clone();
+    }
+
+    @LauncherAPI
+    public Map<String, HashedDir> getSubtrees() {
+        Map<String, HashedDir> subtrees = new HashMap<>(16);
+        collectSubtrees(subtrees);
+        return subtrees;
+    }
+
     @LauncherAPI
     public boolean isEmpty() {
         return map.isEmpty();
@@ -103,6 +128,30 @@ public final class HashedDir extends HashedEntry {
         return Collections.unmodifiableMap(map);
     }
 
+    @LauncherAPI
+    public HashedDir patch(List<String> path, HashedEntry entry) {
+        VerifyHelper.verify(path, p -> !p.isEmpty(), "Empty patch path");
+
+        // Copy dirs on path, unchanged subtrees are shared
+        HashedDir root = copy();
+        HashedDir current = root;
+        for (String name : path.subList(0, path.size() - 1)) {
+            HashedEntry child = current.map.get(name);
+            HashedDir copy = child instanceof HashedDir ? ((HashedDir) child).copy() : new HashedDir();
+            current.map.put(name, copy);
+            current = copy;
+        }
+
+        // Replace or remove entry
+        String name = path.get(path.size() - 1);
+        if (entry == null) {
+            current.map.remove(name);
+        } else {
+            current.map.put(name, entry);
+        }
+        return root;
+    }
+
     @LauncherAPI
     public HashedEntry resolve(Iterable<String> path) {
         HashedEntry current = this;
@@ -116,8 +165,78 @@ public final class HashedDir extends HashedEntry {
         return current;
     }
 
+    private HashedDir copy() {
+        HashedDir copy = new HashedDir();
+        copy.map.putAll(map);
+        return copy;
+    }
+
+    private void collectSubtrees(Map<String, HashedDir> subtrees) {
+        if (subtrees.putIfAbsent(SecurityHelper.toHex(hash()), this) != null) {
+            return; // Same subtree was already collected
+        }
+        for (HashedEntry entry : map.values()) {
+            if (entry.getType() == Type.DIR) {
+                ((HashedDir) entry).collectSubtrees(subtrees);
+            }
+        }
+    }
+
+    private byte[] hash() {
+        byte[] result = hash;
+        if (result == null) { // Hash entries with subdirs replaced by their hashes
+            try (ByteArrayOutputStream array = IOHelper.newByteArrayOutput()) {
+                try (HOutput output = new HOutput(array)) {
+                    writeEntries(output, STUB_ALL);
+                }
+                result = SecurityHelper.digest(HASH_ALGO, array.toByteArray());
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            hash = result;
+        }
+        return result;
+    }
+
+    private void read(HInput input, Map<String, HashedDir> subtrees) throws IOException {
+        int entriesCount = input.readLength(0);
+        for (int i = 0; i < entriesCount; i++) {
+            String name = IOHelper.verifyFileName(input.readString(255));
+
+            // Read entry
+            HashedEntry entry;
+            Type type = Type.read(input);
+            switch (type) {
+                case FILE:
+                    entry = new HashedFile(input);
+                    break;
+                case DIR:
+                    if (subtrees != null && input.readBoolean()) { // Stub, resolve by hash
+                        String hex = SecurityHelper.toHex(input.readByteArray(-HASH_ALGO.bytes));
+                        entry = subtrees.get(hex);
+                        if (entry == null) {
+                            throw new IOException(String.format("Unknown subtree hash: '%s'", hex));
+                        }
+                        break;
+                    }
+                    HashedDir dir = new HashedDir();
+                    dir.read(input, subtrees);
+                    entry = dir;
+                    break;
+                default:
+                    throw new AssertionError("Unsupported hashed entry type: " + type.name());
+            }
+
+            // Try add entry to map
+            VerifyHelper.putIfAbsent(map, name, entry, String.format("Duplicate dir entry: '%s'", name));
+        }
+    }
+
     private HashedDir sideDiff(HashedDir other, FileNameMatcher matcher, Deque<String> path, boolean mismatchList) {
         HashedDir diff = new HashedDir();
+        if (Arrays.equals(hash(), other.hash())) {
+            return diff; // Same subtrees, nothing to compare
+        }
         for (Entry<String, HashedEntry> mapEntry : map.entrySet()) {
             String name = mapEntry.getKey();
             HashedEntry entry = mapEntry.getValue();
@@ -171,22 +290,49 @@ public final class HashedDir extends HashedEntry {
         return diff;
     }
 
+    private void writeEntries(HOutput output, Predicate<HashedDir> stub) throws IOException {
+        Set<Entry<String, HashedEntry>> entries = new TreeMap<>(map).entrySet(); // Sorted, so bytes are canonical
+        output.writeLength(entries.size(), 0);
+        for (Entry<String, HashedEntry> mapEntry : entries) {
+            output.writeString(mapEntry.getKey(), 255);
+
+            // Write hashed entry
+            HashedEntry entry = mapEntry.getValue();
+            EnumSerializer.write(output, entry.getType());
+            if (stub != null && entry.getType() == Type.DIR) {
+                HashedDir dir = (HashedDir) entry;
+                boolean isStub = stub.test(dir);
+                output.writeBoolean(isStub);
+                if (isStub) {
+                    output.writeByteArray(dir.hash(), -HASH_ALGO.bytes);
+                    continue;
+                }
+                dir.writeEntries(output, stub);
+                continue;
+            }
+            entry.write(output);
+        }
+    }
+
     private final class HashFileVisitor extends SimpleFileVisitor<Path> {
         private final Path dir;
         private final FileNameMatcher matcher;
         private final boolean allowSymlinks;
         private final boolean digest;
+        private final HashIndex index;
 
         // State
         private HashedDir current = HashedDir.this;
         private final Deque<String> path = new LinkedList<>();
         private final Deque<HashedDir> stack = new LinkedList<>();
+        private final Deque<PendingFile> pending = new LinkedList<>();
 
-        private HashFileVisitor(Path dir, FileNameMatcher matcher, boolean allowSymlinks, boolean digest) {
+        private HashFileVisitor(Path dir, FileNameMatcher matcher, boolean allowSymlinks, boolean digest, HashIndex index) {
             this.dir = dir;
             this.matcher = matcher;
             this.allowSymlinks = allowSymlinks;
             this.digest =  digest;
+            this.index = index;
         }
 
         @Override
@@ -237,16 +383,75 @@ public final class HashedDir extends HashedEntry {
             // Add file (may be unhashed, if exclusion)
             path.add(IOHelper.getFileName(file));
             boolean doDigest = digest && (matcher == null || matcher.shouldUpdate(path));
-            current.map.put(path.removeLast(), new HashedFile(file, attrs.size(), doDigest));
+            String indexPath = doDigest && index != null ? String.join("/", path) : null;
+            String name = path.removeLast();
+
+            // Reuse digest from index, if file wasn't changed
+            byte[] indexDigest = indexPath == null ? null : index.get(indexPath, attrs);
+            if (indexDigest != null) {
+                current.map.put(name, new HashedFile(attrs.size(), indexDigest));
+                return super.visitFile(file, attrs);
+            }
+
+            // Add file
+            if (doDigest && HASH_POOL != null) { // Digest in parallel, add when done
+                pending.add(new PendingFile(current, name, indexPath, attrs, HASH_POOL.submit(() -> {
+                    try {
+                        return HashedFile.digest(file);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                })));
+            } else {
+                HashedFile hFile = new HashedFile(file, attrs.size(), doDigest);
+                current.map.put(name, hFile);
+                if (indexPath != null) {
+                    index.put(indexPath, attrs, hFile.getDigest());
+                }
+            }
             return super.visitFile(file, attrs);
         }
+
+        private void joinPending() throws IOException {
+            try {
+                for (PendingFile file : pending) {
+                    byte[] fileDigest = file.digest.join();
+                    file.dir.map.put(file.name, new HashedFile(file.attrs.size(), fileDigest));
+                    if (file.indexPath != null) {
+                        index.put(file.indexPath, file.attrs, fileDigest);
+                    }
+                }
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            } finally {
+                for (PendingFile file : pending) {
+                    file.digest.cancel(false);
+                }
+            }
+        }
+    }
+
+    private static final class PendingFile {
+        private final HashedDir dir;
+        private final String name;
+        private final String indexPath;
+        private final BasicFileAttributes attrs;
+        private final ForkJoinTask<byte[]> digest;
+
+        private PendingFile(HashedDir dir, String name, String indexPath, BasicFileAttributes attrs, ForkJoinTask<byte[]> digest) {
+            this.dir = dir;
+            this.name = name;
+            this.indexPath = indexPath;
+            this.attrs = attrs;
+            this.digest = digest;
+        }
     }
 
     public static final class Diff {
         @LauncherAPI public final HashedDir mismatch;
         @LauncherAPI public final HashedDir extra;
 
-        private Diff(HashedDir mismatch, HashedDir extra) {
+        /*package*/ Diff(HashedDir mismatch, HashedDir extra) {
             this.mismatch = mismatch;
             this.extra = extra;
         }
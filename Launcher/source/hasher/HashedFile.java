@@ -1,7 +1,11 @@
 package launcher.hasher;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
 import java.util.Arrays;
 
 import launcher.LauncherAPI;
@@ -14,6 +18,7 @@ import launcher.serialize.HOutput;
 
 public final class HashedFile extends HashedEntry {
     public static final DigestAlgorithm DIGEST_ALGO = DigestAlgorithm.MD5;
+    private static final ThreadLocal<ByteBuffer> DIGEST_BUFFER = ThreadLocal.withInitial(() -> ByteBuffer.allocateDirect(IOHelper.BUFFER_SIZE << 4));
 
     // Instance
     @LauncherAPI public final long size;
@@ -27,7 +32,7 @@ public final class HashedFile extends HashedEntry {
 
     @LauncherAPI
     public HashedFile(Path file, long size, boolean digest) throws IOException {
-        this(size, digest ? SecurityHelper.digest(DIGEST_ALGO, file) : null);
+        this(size, digest ? digest(file) : null);
     }
 
     @LauncherAPI
@@ -54,6 +59,11 @@ public final class HashedFile extends HashedEntry {
         }
     }
 
+    @LauncherAPI
+    public byte[] getDigest() {
+        return digest == null ? null : digest.clone();
+    }
+
     @LauncherAPI
     public boolean isSame(HashedFile o) {
         return size == o.size && (digest == null || o.digest == null || Arrays.equals(digest, o.digest));
@@ -69,7 +79,7 @@ public final class HashedFile extends HashedEntry {
         }
 
         // Create digest
-        byte[] actualDigest = SecurityHelper.digest(DIGEST_ALGO, file);
+        byte[] actualDigest = digest(file);
         return Arrays.equals(this.digest, actualDigest);
     }
 
@@ -77,4 +87,19 @@ public final class HashedFile extends HashedEntry {
     public boolean isSameDigest(byte[] digest) {
         return this.digest == null || digest == null || Arrays.equals(this.digest, digest);
     }
+
+    @LauncherAPI
+    public static byte[] digest(Path file) throws IOException {
+        MessageDigest digest = SecurityHelper.newDigest(DIGEST_ALGO);
+        ByteBuffer buffer = DIGEST_BUFFER.get();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            buffer.clear();
+            while (channel.read(buffer) >= 0) {
+                buffer.flip();
+                digest.update(buffer);
+                buffer.clear();
+            }
+        }
+        return digest.digest();
+    }
 }
@@ -44,6 +44,7 @@ public final class SecurityHelper {
     @LauncherAPI public static final int RSA_KEY_LENGTH_BITS = 2048;
     @LauncherAPI public static final int RSA_KEY_LENGTH = RSA_KEY_LENGTH_BITS / Byte.SIZE;
     @LauncherAPI public static final int CRYPTO_MAX_LENGTH = 2048;
+    @LauncherAPI public static final int KEY_FINGERPRINT_LENGTH = 256 / Byte.SIZE; // SHA-256
 
     // Certificate constants
     @LauncherAPI public static final String CERTIFICATE_DIGEST = "fca9659209c6b3b510d9d0e328f37ea0e8df11b6f897c70e4fce440501f43075";
@@ -90,6 +91,23 @@ public final class SecurityHelper {
         return digest.digest();
     }
 
+    @LauncherAPI
+    public static byte[] fromHex(String hex) {
+        if ((hex.length() & 1) != 0) {
+            throw new IllegalArgumentException("Odd hex string length");
+        }
+        byte[] bytes = new byte[hex.length() >> 1];
+        for (int i = 0; i < bytes.length; i++) {
+            int high = HEX.indexOf(hex.charAt(i << 1));
+            int low = HEX.indexOf(hex.charAt((i << 1) + 1));
+            if (high < 0 || low < 0) {
+                throw new IllegalArgumentException(String.format("Illegal hex string: '%s'", hex));
+            }
+            bytes[i] = (byte) (high << 4 | low);
+        }
+        return bytes;
+    }
+
     @LauncherAPI
     public static KeyPair genRSAKeyPair(SecureRandom random) {
         try {
@@ -106,6 +124,11 @@ public final class SecurityHelper {
         return genRSAKeyPair(newRandom());
     }
 
+    @LauncherAPI
+    public static byte[] getKeyFingerprint(RSAKey key) {
+        return digest(DigestAlgorithm.SHA256, key.getModulus().toByteArray());
+    }
+
     @LauncherAPI
     public static boolean isValidCertificate(Certificate cert) {
         try {
@@ -1,13 +1,20 @@
 package launcher.request;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.net.Socket;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Set;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import launcher.Launcher;
 import launcher.Launcher.Config;
 import launcher.LauncherAPI;
 import launcher.helper.IOHelper;
+import launcher.helper.LogHelper;
 import launcher.helper.SecurityHelper;
 import launcher.serialize.HInput;
 import launcher.serialize.HOutput;
@@ -15,6 +22,10 @@ import launcher.serialize.stream.EnumSerializer;
 import launcher.serialize.stream.EnumSerializer.Itf;
 
 public abstract class Request<R> {
+    @LauncherAPI public static final Set<Type> SESSION_TYPES = Collections.unmodifiableSet(EnumSet.of(
+        Type.PING, Type.UPDATE_LIST, Type.UPDATE_CHECK, Type.AUTH, Type.JOIN_SERVER, Type.CHECK_SERVER,
+        Type.PROFILE_BY_USERNAME, Type.PROFILE_BY_UUID, Type.BATCH_PROFILE_BY_USERNAME));
+
     @LauncherAPI protected final Config config;
     private final AtomicBoolean started = new AtomicBoolean(false);
 
@@ -40,13 +51,30 @@ public abstract class Request<R> {
         if (!started.compareAndSet(false, true)) {
             throw new IllegalStateException("Request already started");
         }
+        return requestConnect();
+    }
+
+    @LauncherAPI
+    @SuppressWarnings("DesignForExtension")
+    protected R requestConnect() throws Throwable {
+        // Make request over shared session, if possible
+        SessionPool.Session session = SESSION_TYPES.contains(getType()) ? SessionPool.getSession(config) : null;
+        if (session != null) {
+            ByteArrayOutputStream payload = IOHelper.newByteArrayOutput();
+            try (HInput input = new HInput(session.newResponseInput(getType(), payload));
+                HOutput output = new HOutput(payload)) {
+                return requestDo(input, output);
+            } catch (SessionPool.NotSentException e) { // Server didn't get request, so it's safe to repeat
+                LogHelper.debug("Session request failed, using one-shot connection: %s", e.getCause());
+            }
+        }
 
         // Make request to LaunchServer
         try (Socket socket = IOHelper.newSocket()) {
             socket.connect(IOHelper.resolve(config.address));
-            try (HInput input = new HInput(socket.getInputStream());
-                HOutput output = new HOutput(socket.getOutputStream())) {
-                writeHandshake(input, output);
+            try (HInput input = new HInput(new BufferedInputStream(socket.getInputStream(), IOHelper.BUFFER_SIZE));
+                HOutput output = new HOutput(new BufferedOutputStream(socket.getOutputStream(), IOHelper.BUFFER_SIZE))) {
+                writeHandshake(config, Launcher.PROTOCOL_MAGIC, getType(), input, output);
                 return requestDo(input, output);
             }
         }
@@ -60,11 +88,15 @@ public abstract class Request<R> {
         }
     }
 
-    private void writeHandshake(HInput input, HOutput output) throws IOException {
+    /*package*/ static void writeHandshake(Config config, int magic, Type type, HInput input, HOutput output) throws IOException {
         // Write handshake
-        output.writeInt(Launcher.PROTOCOL_MAGIC);
-        output.writeBigInteger(config.publicKey.getModulus(), SecurityHelper.RSA_KEY_LENGTH + 1);
-        EnumSerializer.write(output, getType());
+        output.writeInt(magic);
+        if (type == Type.LAUNCHER) { // Keep modulus, so launcher can update itself from older LaunchServer
+            output.writeBigInteger(config.publicKey.getModulus(), SecurityHelper.RSA_KEY_LENGTH + 1);
+        } else {
+            output.writeByteArray(config.keyFingerprint, SecurityHelper.RSA_KEY_LENGTH + 1);
+        }
+        EnumSerializer.write(output, type);
         output.flush();
 
         // Verify is accepted
@@ -81,9 +113,10 @@ public abstract class Request<R> {
     @LauncherAPI
     public enum Type implements Itf {
         PING(0), // Ping request
-        LAUNCHER(1), UPDATE(2), UPDATE_LIST(3), // Update requests
+        LAUNCHER(1), UPDATE(2), UPDATE_LIST(3), UPDATE_CHECK(10), // Update requests
         AUTH(4), JOIN_SERVER(5), CHECK_SERVER(6), // Auth requests
         PROFILE_BY_USERNAME(7), PROFILE_BY_UUID(8), BATCH_PROFILE_BY_USERNAME(9), // Profile requests
+        SESSION(254), // Multiplexed requests (SESSION_MAGIC only)
         CUSTOM(255); // Custom requests
         private static final EnumSerializer<Type> SERIALIZER = new EnumSerializer<>(Type.class);
         private final int n;
@@ -0,0 +1,246 @@
+package launcher.request;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import launcher.Launcher;
+import launcher.Launcher.Config;
+import launcher.LauncherAPI;
+import launcher.helper.CommonHelper;
+import launcher.helper.IOHelper;
+import launcher.helper.LogHelper;
+import launcher.helper.VerifyHelper;
+import launcher.request.Request.Type;
+import launcher.serialize.HInput;
+import launcher.serialize.HOutput;
+import launcher.serialize.stream.EnumSerializer;
+
+public final class SessionPool {
+    @LauncherAPI public static final boolean ENABLED = Boolean.parseBoolean(
+        System.getProperty("launcher.requestSessions", Boolean.toString(false)));
+    @LauncherAPI public static final int CONNECTIONS = VerifyHelper.verifyInt(
+        Integer.parseInt(System.getProperty("launcher.sessionConnections", Integer.toString(2))),
+        VerifyHelper.POSITIVE, "launcher.sessionConnections can't be <= 0");
+    private static final long MAX_IDLE_TIME = IOHelper.SOCKET_TIMEOUT / 2; // Re-connect before server drops us
+    private static final Map<Config, SessionPool> POOLS = Collections.synchronizedMap(new WeakHashMap<>(1));
+
+    // Instance
+    private final Config config;
+    private final Session[] sessions = new Session[CONNECTIONS];
+    private final AtomicInteger next = new AtomicInteger(0);
+    private volatile boolean unsupported;
+
+    private SessionPool(Config config) {
+        this.config = config;
+    }
+
+    private synchronized Session getSession() throws IOException {
+        if (unsupported) {
+            return null;
+        }
+
+        // Re-use or re-open session
+        int index = Math.floorMod(next.getAndIncrement(), sessions.length);
+        Session session = sessions[index];
+        if (session == null || !session.isUsable()) {
+            if (session != null) {
+                session.close(null);
+            }
+            session = Session.open(config);
+            if (session == null) {
+                LogHelper.debug("LaunchServer doesn't support sessions, using one-shot connections");
+                unsupported = true;
+                return null;
+            }
+            sessions[index] = session;
+        }
+        return session;
+    }
+
+    @LauncherAPI
+    public static void closeAll() {
+        synchronized (POOLS) {
+            for (SessionPool pool : POOLS.values()) {
+                synchronized (pool) {
+                    for (Session session : pool.sessions) {
+                        if (session != null) {
+                            session.close(null);
+                        }
+                    }
+                }
+            }
+            POOLS.clear();
+        }
+    }
+
+    /*package*/ static Session getSession(Config config) throws IOException {
+        return ENABLED ? POOLS.computeIfAbsent(config, SessionPool::new).getSession() : null;
+    }
+
+    /*package*/ static final class NotSentException extends IOException {
+        private static final long serialVersionUID = -2301937498217561822L;
+
+        private NotSentException(Throwable exc) {
+            super("Session request wasn't sent", exc);
+        }
+    }
+
+    /*package*/ static final class Session {
+        private final Socket socket;
+        private final HInput input;
+        private final HOutput output;
+        private final Map<Integer, CompletableFuture<byte[]>> pending = new ConcurrentHashMap<>(16);
+        private final AtomicInteger idCounter = new AtomicInteger(0);
+        private volatile long lastUsed = System.currentTimeMillis();
+        private volatile boolean closed;
+
+        private Session(Socket socket) throws IOException {
+            this.socket = socket;
+            input = new HInput(new BufferedInputStream(socket.getInputStream(), IOHelper.BUFFER_SIZE));
+            output = new HOutput(new BufferedOutputStream(socket.getOutputStream(), IOHelper.BUFFER_SIZE));
+        }
+
+        /*package*/ InputStream newResponseInput(Type type, ByteArrayOutputStream payload) {
+            return new ResponseInput(type, payload);
+        }
+
+        private void close(Throwable exc) {
+            closed = true;
+            IOHelper.close(socket);
+
+            // Fail all pending requests
+            Throwable cause = exc == null ? new EOFException("Session closed") : exc;
+            for (CompletableFuture<byte[]> future : pending.values()) {
+                future.completeExceptionally(cause);
+            }
+        }
+
+        private boolean isUsable() {
+            return !closed && (!pending.isEmpty() || System.currentTimeMillis() - lastUsed < MAX_IDLE_TIME);
+        }
+
+        private void readResponses() {
+            Throwable savedError = null;
+            try {
+                while (!closed) {
+                    int requestID = input.readVarInt();
+                    byte[] response = input.readByteArray(0);
+
+                    // Complete matching request
+                    CompletableFuture<byte[]> future = pending.remove(requestID);
+                    if (future != null) {
+                        future.complete(response);
+                    }
+                }
+            } catch (Throwable exc) {
+                savedError = exc;
+            } finally {
+                close(savedError);
+            }
+        }
+
+        private byte[] request(Type type, byte[] payload) throws IOException {
+            int requestID = idCounter.incrementAndGet();
+            CompletableFuture<byte[]> future = new CompletableFuture<>();
+            pending.put(requestID, future);
+            lastUsed = System.currentTimeMillis();
+            try {
+                try {
+                    synchronized (output) {
+                        if (closed) {
+                            throw new EOFException("Session closed");
+                        }
+                        output.writeVarInt(requestID);
+                        EnumSerializer.write(output, type);
+                        output.writeByteArray(payload, 0);
+                        output.flush();
+                    }
+                } catch (IOException e) { // Server can't process incomplete frame
+                    close(e);
+                    throw new NotSentException(e);
+                }
+                return future.get(IOHelper.SOCKET_TIMEOUT, TimeUnit.MILLISECONDS);
+            } catch (ExecutionException e) {
+                throw new IOException("Session failed", e.getCause());
+            } catch (TimeoutException e) {
+                close(e);
+                throw new SocketTimeoutException("Session request timed out");
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Session request interrupted");
+            } catch (IOException e) {
+                close(e);
+                throw e;
+            } finally {
+                pending.remove(requestID);
+            }
+        }
+
+        private static Session open(Config config) throws IOException {
+            Socket socket = IOHelper.newSocket();
+            try {
+                socket.connect(IOHelper.resolve(config.address));
+                Session session = new Session(socket);
+                try {
+                    Request.writeHandshake(config, Launcher.SESSION_MAGIC, Type.SESSION, session.input, session.output);
+                } catch (RequestException ignored) {
+                    socket.close();
+                    return null; // Not supported (or not accepted)
+                }
+
+                // Responses are awaited with timeout, so reader can block forever
+                socket.setSoTimeout(0);
+                CommonHelper.newThread("Session Thread", true, session::readResponses).start();
+                return session;
+            } catch (IOException e) {
+                socket.close();
+                throw e;
+            }
+        }
+
+        private final class ResponseInput extends InputStream {
+            private final Type type;
+            private final ByteArrayOutputStream payload;
+            private InputStream response;
+
+            private ResponseInput(Type type, ByteArrayOutputStream payload) {
+                this.type = type;
+                this.payload = payload;
+            }
+
+            @Override
+            public int read() throws IOException {
+                return getResponse().read();
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                return getResponse().read(b, off, len);
+            }
+
+            private InputStream getResponse() throws IOException {
+                if (response == null) { // Send request on first read
+                    response = new ByteArrayInputStream(request(type, payload.toByteArray()));
+                }
+                return response;
+            }
+        }
+    }
+}
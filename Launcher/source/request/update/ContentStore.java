@@ -0,0 +1,142 @@
+package launcher.request.update;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import launcher.LauncherAPI;
+import launcher.hasher.HashIndexStore;
+import launcher.hasher.HashedDir;
+import launcher.hasher.HashedEntry;
+import launcher.hasher.HashedFile;
+import launcher.helper.IOHelper;
+import launcher.helper.LogHelper;
+import launcher.helper.SecurityHelper;
+
+public final class ContentStore {
+    @LauncherAPI public static final boolean ENABLED = Boolean.parseBoolean(
+        System.getProperty("launcher.contentStore", Boolean.toString(true)));
+    @LauncherAPI public static final String STORE_DIR = ".store";
+    private static final String TEMP_SUFFIX = ".link";
+
+    // Instance
+    @LauncherAPI public final Path dir;
+    private final Map<String, Path> objects = new HashMap<>(256); // Verified objects by digest
+    private boolean linkable = true;
+
+    private ContentStore(Path dir) {
+        this.dir = dir;
+    }
+
+    @LauncherAPI
+    public synchronized void add(Path file, HashedFile hFile) {
+        byte[] digest = hFile.getDigest();
+        if (!linkable || digest == null || hFile.size <= 0L) {
+            return;
+        }
+
+        // Link file as new object (store keeps single inode for all profiles)
+        String name = SecurityHelper.toHex(digest);
+        if (objects.containsKey(name)) {
+            return;
+        }
+        Path object = getObjectFile(name);
+        try {
+            Files.createDirectories(object.getParent());
+            Files.deleteIfExists(object);
+            Files.createLink(object, file);
+            objects.put(name, object);
+        } catch (IOException | UnsupportedOperationException e) { // Copy would just double disk usage
+            LogHelper.debug("Can't link file to content store: %s", e);
+            linkable = false;
+        }
+    }
+
+    @LauncherAPI
+    public synchronized boolean get(Path file, HashedFile hFile) throws IOException {
+        byte[] digest = hFile.getDigest();
+        Path object = digest == null ? null : objects.get(SecurityHelper.toHex(digest));
+        if (object == null || IOHelper.readAttributes(object).size() != hFile.size) {
+            return false;
+        }
+
+        // Replace atomically, so interrupted link won't leave broken file
+        Files.createDirectories(file.getParent());
+        Path tempFile = file.resolveSibling(IOHelper.getFileName(file) + TEMP_SUFFIX);
+        Files.deleteIfExists(tempFile);
+        try {
+            Files.createLink(tempFile, object);
+        } catch (IOException | UnsupportedOperationException e) { // Other file system, fall back to copy
+            Files.copy(object, tempFile);
+        }
+        Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return true;
+    }
+
+    private Path getObjectFile(String name) {
+        return dir.resolve(name.substring(0, 2)).resolve(name);
+    }
+
+    private void verify(HashedDir hdir) throws IOException {
+        for (Entry<String, HashedEntry> prefixEntry : hdir.map().entrySet()) {
+            Path prefixDir = dir.resolve(prefixEntry.getKey());
+            if (prefixEntry.getValue().getType() != HashedEntry.Type.DIR) {
+                Files.delete(prefixDir);
+                continue;
+            }
+
+            // Keep objects with matching digest and other links (other are unused or corrupted)
+            for (Entry<String, HashedEntry> entry : ((HashedDir) prefixEntry.getValue()).map().entrySet()) {
+                String name = entry.getKey();
+                Path object = prefixDir.resolve(name);
+                HashedEntry hObject = entry.getValue();
+                if (hObject.getType() == HashedEntry.Type.FILE && name.startsWith(prefixEntry.getKey()) &&
+                    Arrays.equals(((HashedFile) hObject).getDigest(), parseDigest(name)) && getLinkCount(object) > 1) {
+                    objects.put(name, object);
+                    continue;
+                }
+                IOHelper.deleteDir(object, true);
+            }
+        }
+    }
+
+    @LauncherAPI
+    public static ContentStore open(Path updatesDir) {
+        if (!ENABLED) {
+            return null;
+        }
+
+        // Hash store (unchanged objects are taken from hash index)
+        Path storeDir = updatesDir.resolve(STORE_DIR);
+        ContentStore store = new ContentStore(storeDir);
+        try {
+            Files.createDirectories(storeDir);
+            store.verify(HashIndexStore.hashDir(storeDir, null, true));
+        } catch (IOException e) {
+            LogHelper.debug("Can't open content store: %s", e);
+            return null;
+        }
+        return store;
+    }
+
+    private static long getLinkCount(Path file) {
+        try {
+            return ((Number) Files.getAttribute(file, "unix:nlink")).longValue();
+        } catch (IOException | UnsupportedOperationException | IllegalArgumentException e) {
+            return 2L; // Can't tell, assume it's used
+        }
+    }
+
+    private static byte[] parseDigest(String name) {
+        try {
+            return SecurityHelper.fromHex(name);
+        } catch (IllegalArgumentException ignored) {
+            return new byte[0]; // Won't match any digest
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package launcher.request.update;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import launcher.LauncherAPI;
+import launcher.helper.SecurityHelper;
+import launcher.helper.SecurityHelper.DigestAlgorithm;
+import launcher.helper.VerifyHelper;
+import launcher.serialize.HInput;
+import launcher.serialize.HOutput;
+import launcher.serialize.stream.StreamObject;
+
+public final class DeltaSignature extends StreamObject {
+    @LauncherAPI public static final long MIN_FILE_SIZE = 0x100000; // Smaller files are cheap to re-download
+    @LauncherAPI public static final long MAX_FILE_SIZE = Integer.MAX_VALUE; // Server maps file into memory
+    @LauncherAPI public static final int MIN_BLOCK_SIZE = 0x800;
+    @LauncherAPI public static final int MAX_BLOCK_SIZE = 0x100000;
+    @LauncherAPI public static final int MAX_BLOCKS = 0x4000;
+    @LauncherAPI public static final DigestAlgorithm STRONG_ALGO = DigestAlgorithm.MD5;
+
+    // Delta stream ops
+    @LauncherAPI public static final int OP_END = 0;
+    @LauncherAPI public static final int OP_COPY = 1;
+    @LauncherAPI public static final int OP_LITERAL = 2;
+
+    // Instance
+    @LauncherAPI public final int blockSize;
+    private final int[] weakSums;
+    private final byte[][] strongSums;
+
+    // Lookup (built lazily on matching side)
+    private Map<Integer, Integer> firstBlocks;
+    private int[] nextBlocks;
+    private MessageDigest strongDigest;
+
+    @LauncherAPI
+    public DeltaSignature(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            blockSize = getBlockSize(size);
+            int count = (int) Math.min(size / blockSize, MAX_BLOCKS);
+            weakSums = new int[count];
+            strongSums = new byte[count][];
+
+            // Sum full blocks (tail is always sent as literal)
+            MessageDigest digest = SecurityHelper.newDigest(STRONG_ALGO);
+            ByteBuffer buffer = ByteBuffer.allocate(blockSize);
+            for (int i = 0; i < count; i++) {
+                buffer.clear();
+                while (buffer.hasRemaining()) {
+                    if (channel.read(buffer, (long) i * blockSize + buffer.position()) < 0) {
+                        throw new IOException("File was truncated during signing: " + file);
+                    }
+                }
+                weakSums[i] = weakSum(buffer, 0, blockSize);
+                buffer.flip();
+                digest.update(buffer);
+                strongSums[i] = digest.digest();
+            }
+        }
+    }
+
+    @LauncherAPI
+    public DeltaSignature(HInput input) throws IOException {
+        blockSize = VerifyHelper.verifyInt(input.readVarInt(),
+            VerifyHelper.range(MIN_BLOCK_SIZE, MAX_BLOCK_SIZE), "Illegal delta block size");
+        int count = input.readLength(MAX_BLOCKS);
+        weakSums = new int[count];
+        strongSums = new byte[count][];
+        for (int i = 0; i < count; i++) {
+            weakSums[i] = input.readInt();
+            strongSums[i] = input.readByteArray(-STRONG_ALGO.bytes);
+        }
+    }
+
+    @Override
+    public void write(HOutput output) throws IOException {
+        output.writeVarInt(blockSize);
+        output.writeLength(weakSums.length, MAX_BLOCKS);
+        for (int i = 0; i < weakSums.length; i++) {
+            output.writeInt(weakSums[i]);
+            output.writeByteArray(strongSums[i], -STRONG_ALGO.bytes);
+        }
+    }
+
+    @LauncherAPI
+    public int findBlock(ByteBuffer buffer, int offset, int weakSum) {
+        if (firstBlocks == null) {
+            buildLookup();
+        }
+        Integer first = firstBlocks.get(weakSum);
+        if (first == null) {
+            return -1; // Cheap miss
+        }
+
+        // Compare strong sums of candidates
+        ByteBuffer block = buffer.duplicate();
+        block.limit(offset + blockSize).position(offset);
+        strongDigest.update(block);
+        byte[] strongSum = strongDigest.digest();
+        for (int i = first; i >= 0; i = nextBlocks[i]) {
+            if (weakSums[i] == weakSum && Arrays.equals(strongSums[i], strongSum)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    @LauncherAPI
+    public int getBlockCount() {
+        return weakSums.length;
+    }
+
+    private void buildLookup() {
+        firstBlocks = new HashMap<>(weakSums.length);
+        nextBlocks = new int[weakSums.length];
+        for (int i = weakSums.length - 1; i >= 0; i--) {
+            Integer next = firstBlocks.put(weakSums[i], i);
+            nextBlocks[i] = next == null ? -1 : next;
+        }
+        strongDigest = SecurityHelper.newDigest(STRONG_ALGO);
+    }
+
+    @LauncherAPI
+    public static int getBlockSize(long fileSize) {
+        int blockSize = MIN_BLOCK_SIZE;
+        while (blockSize < MAX_BLOCK_SIZE && ((long) blockSize * blockSize < fileSize || fileSize / blockSize > MAX_BLOCKS)) {
+            blockSize <<= 1; // ~sqrt(size), but not too many blocks
+        }
+        return blockSize;
+    }
+
+    @LauncherAPI
+    public static boolean isApplicable(long localSize, long remoteSize) {
+        return localSize >= MIN_FILE_SIZE && localSize <= MAX_FILE_SIZE &&
+            remoteSize >= MIN_FILE_SIZE && remoteSize <= MAX_FILE_SIZE;
+    }
+
+    @LauncherAPI
+    public static int rollWeakSum(int weakSum, int blockSize, byte out, byte in) {
+        int a = (weakSum - Byte.toUnsignedInt(out) + Byte.toUnsignedInt(in)) & 0xFFFF;
+        int b = ((weakSum >>> 16) - blockSize * Byte.toUnsignedInt(out) + a) & 0xFFFF;
+        return a | b << 16;
+    }
+
+    @LauncherAPI
+    public static int weakSum(ByteBuffer buffer, int offset, int length) {
+        int a = 0;
+        int b = 0;
+        for (int i = 0; i < length; i++) {
+            int value = Byte.toUnsignedInt(buffer.get(offset + i));
+            a += value;
+            b += (length - i) * value;
+        }
+        return a & 0xFFFF | (b & 0xFFFF) << 16;
+    }
+}
@@ -0,0 +1,75 @@
+package launcher.request.update;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+
+import launcher.Launcher.Config;
+import launcher.LauncherAPI;
+import launcher.hasher.HashedDir;
+import launcher.helper.IOHelper;
+import launcher.helper.VerifyHelper;
+import launcher.request.Request;
+import launcher.serialize.HInput;
+import launcher.serialize.HOutput;
+import launcher.serialize.signed.SignedObjectHolder;
+
+public final class UpdateCheckRequest extends Request<Set<String>> {
+    @LauncherAPI public static final int MAX_DIRS = 64;
+
+    // Instance
+    private final Map<String, SignedObjectHolder<HashedDir>> cachedHDirs;
+
+    @LauncherAPI
+    public UpdateCheckRequest(Config config, Map<String, SignedObjectHolder<HashedDir>> cachedHDirs) {
+        super(config);
+        this.cachedHDirs = VerifyHelper.verify(cachedHDirs, m -> m.size() <= MAX_DIRS, "Too many dirs to check");
+        cachedHDirs.keySet().forEach(IOHelper::verifyFileName);
+    }
+
+    @LauncherAPI
+    public UpdateCheckRequest(Map<String, SignedObjectHolder<HashedDir>> cachedHDirs) {
+        this(null, cachedHDirs);
+    }
+
+    @Override
+    public Type getType() {
+        return Type.UPDATE_CHECK;
+    }
+
+    @Override
+    protected Set<String> requestDo(HInput input, HOutput output) throws IOException {
+        Set<String> changed = new HashSet<>(cachedHDirs.size());
+        List<String> checked = new ArrayList<>(cachedHDirs.size());
+        for (Entry<String, SignedObjectHolder<HashedDir>> entry : cachedHDirs.entrySet()) {
+            if (entry.getValue() == null) {
+                changed.add(entry.getKey()); // Not cached, no need to ask
+                continue;
+            }
+            checked.add(entry.getKey());
+        }
+
+        // Write dir names and cached root hashes
+        output.writeLength(checked.size(), MAX_DIRS);
+        for (String dirName : checked) {
+            output.writeString(dirName, 255);
+            output.writeByteArray(cachedHDirs.get(dirName).object.getHash(), -HashedDir.HASH_ALGO.bytes);
+        }
+        output.flush();
+
+        // Read changed flags
+        for (String dirName : checked) {
+            if (input.readBoolean()) {
+                changed.add(dirName);
+            }
+        }
+
+        // We're done. Make it unmodifiable and return
+        return Collections.unmodifiableSet(changed);
+    }
+}
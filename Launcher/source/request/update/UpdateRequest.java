@@ -4,29 +4,55 @@ import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.security.MessageDigest;
 import java.security.SignatureException;
 import java.time.Duration;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
 import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Objects;
 import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.zip.InflaterInputStream;
 
 import launcher.Launcher.Config;
 import launcher.LauncherAPI;
+import launcher.hasher.DiffManifest;
 import launcher.hasher.FileNameMatcher;
+import launcher.hasher.HashIndexStore;
 import launcher.hasher.HashedDir;
 import launcher.hasher.HashedDir.Diff;
 import launcher.hasher.HashedEntry;
 import launcher.hasher.HashedFile;
+import launcher.helper.CommonHelper;
 import launcher.helper.IOHelper;
+import launcher.helper.LogHelper;
 import launcher.helper.SecurityHelper;
 import launcher.helper.SecurityHelper.DigestAlgorithm;
+import launcher.helper.VerifyHelper;
 import launcher.request.Request;
+import launcher.request.RequestException;
 import launcher.request.update.UpdateRequest.State.Callback;
 import launcher.serialize.HInput;
 import launcher.serialize.HOutput;
@@ -37,32 +63,59 @@ import launcher.serialize.stream.StreamObject;
 
 public final class UpdateRequest extends Request<SignedObjectHolder<HashedDir>> {
     @LauncherAPI public static final int MAX_QUEUE_SIZE = 128;
+    @LauncherAPI public static final int MAX_ATTEMPTS = 5;
+    @LauncherAPI public static final boolean STREAMING = Boolean.parseBoolean(
+        System.getProperty("launcher.updateStreaming", Boolean.toString(true)));
+    @LauncherAPI public static final int MAX_IN_FLIGHT_ACTIONS = 256;
+    @LauncherAPI public static final int MAX_KNOWN_SUBTREES = 0x10000;
+    @LauncherAPI public static final int CONNECTIONS = VerifyHelper.verifyInt(
+        Integer.parseInt(System.getProperty("launcher.updateConnections", Integer.toString(1))),
+        VerifyHelper.POSITIVE, "launcher.updateConnections can't be <= 0");
+    private static final long RETRY_DELAY = 1000L;
+    private static final long MAX_RETRY_DELAY = 16000L;
+    private static final String DELTA_SUFFIX = ".delta";
+    private static final String PART_SUFFIX = ".part";
 
     // Instance
     private final String dirName;
     private final Path dir;
     private final FileNameMatcher matcher;
     private final boolean digest;
+    private final SignedObjectHolder<HashedDir> cachedHDir;
     private volatile Callback stateCallback;
 
     // State
+    private final Map<Path, HashedFile> completedFiles = new ConcurrentHashMap<>(16);
     private HashedDir localDir;
-    private long totalDownloaded;
+    private ContentStore store;
+    private final AtomicLong totalDownloaded = new AtomicLong(0L);
     private long totalSize;
     private Instant startTime;
 
     @LauncherAPI
-    public UpdateRequest(Config config, String dirName, Path dir, FileNameMatcher matcher, boolean digest) {
+    public UpdateRequest(Config config, String dirName, Path dir, FileNameMatcher matcher, boolean digest,
+        SignedObjectHolder<HashedDir> cachedHDir) {
         super(config);
         this.dirName = IOHelper.verifyFileName(dirName);
         this.dir = Objects.requireNonNull(dir, "dir");
         this.matcher = matcher;
         this.digest = digest;
+        this.cachedHDir = cachedHDir;
+    }
+
+    @LauncherAPI
+    public UpdateRequest(Config config, String dirName, Path dir, FileNameMatcher matcher, boolean digest) {
+        this(config, dirName, dir, matcher, digest, null);
+    }
+
+    @LauncherAPI
+    public UpdateRequest(String dirName, Path dir, FileNameMatcher matcher, boolean digest, SignedObjectHolder<HashedDir> cachedHDir) {
+        this(null, dirName, dir, matcher, digest, cachedHDir);
     }
 
     @LauncherAPI
     public UpdateRequest(String dirName, Path dir, FileNameMatcher matcher, boolean digest) {
-        this(null, dirName, dir, matcher, digest);
+        this(null, dirName, dir, matcher, digest, null);
     }
 
     @Override
@@ -73,36 +126,152 @@ public final class UpdateRequest extends Request<SignedObjectHolder<HashedDir>>
     @Override
     public SignedObjectHolder<HashedDir> request() throws Throwable {
         Files.createDirectories(dir);
-        localDir = new HashedDir(dir, matcher, false, digest);
+        localDir = HashIndexStore.hashDir(dir, matcher, digest);
 
         // Start request
         return super.request();
     }
 
     @Override
-    protected SignedObjectHolder<HashedDir> requestDo(HInput input, HOutput output) throws IOException, SignatureException {
-        // Write update dir name
+    protected SignedObjectHolder<HashedDir> requestConnect() throws Throwable {
+        long retryDelay = RETRY_DELAY;
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return super.requestConnect();
+            } catch (RequestException e) {
+                throw e; // Rejected by LaunchServer, retry won't help
+            } catch (IOException e) {
+                if (attempt >= MAX_ATTEMPTS) {
+                    throw e;
+                }
+                LogHelper.warning("Update attempt %d failed: %s, retrying in %dms", attempt, e, retryDelay);
+            }
+
+            // Wait before retry
+            Thread.sleep(retryDelay);
+            retryDelay = Math.min(retryDelay << 1, MAX_RETRY_DELAY);
+
+            // Don't download completed files again (partial ones will be resumed)
+            for (Entry<Path, HashedFile> entry : completedFiles.entrySet()) {
+                localDir = localDir.patch(toList(entry.getKey()), entry.getValue());
+            }
+            completedFiles.clear();
+        }
+    }
+
+    @Override
+    protected SignedObjectHolder<HashedDir> requestDo(HInput input, HOutput output) throws IOException, SignatureException, InterruptedException {
+        // Verify local dir against cached hdir
+        HashedDir cachedDir = cachedHDir == null ? null : cachedHDir.object;
+        boolean cachedVerified = cachedDir != null && cachedDir.diff(localDir, matcher).isSame();
+
+        // Write update dir name and cached hdir hash
         output.writeString(dirName, 255);
+        output.writeBoolean(false); // Main connection
+        writeCachedHash(output, cachedDir == null ? null : cachedDir.getHash(), cachedVerified);
         output.flush();
         readError(input);
 
-        // Get diff between local and remote dir
-        SignedObjectHolder<HashedDir> remoteHDirHolder = new SignedObjectHolder<>(input, config.publicKey, HashedDir::new);
-        Diff diff = remoteHDirHolder.object.diff(localDir, matcher);
+        // Reuse cached hdir if unchanged (and skip update if local dir matches it)
+        SignedObjectHolder<HashedDir> remoteHDirHolder;
+        DiffManifest manifest = null;
+        if (input.readBoolean()) {
+            if (cachedDir == null) {
+                throw new IOException("Unexpected unchanged hdir reply");
+            }
+            if (cachedVerified) {
+                return cachedHDir;
+            }
+            remoteHDirHolder = cachedHDir;
+        } else { // Write known subtree hashes, unchanged subtrees are sent as hash stubs
+            Map<String, HashedDir> subtrees = cachedDir == null ? new HashMap<>(16) : cachedDir.getSubtrees();
+            localDir.getSubtrees().forEach(subtrees::putIfAbsent);
+            writeSubtrees(output, subtrees);
+            output.flush();
+            byte[] remoteHDirSign = input.readByteArray(-SecurityHelper.RSA_KEY_LENGTH);
+            byte[] remoteHDirBytes = new HashedDir(input, subtrees).write();
+            remoteHDirHolder = new SignedObjectHolder<>(remoteHDirBytes, remoteHDirSign, config.publicKey, HashedDir::new);
+            if (cachedVerified && input.readBoolean()) { // We're on known generation
+                manifest = new DiffManifest(input);
+            }
+        }
+
+        // Get diff between local and remote dir (take shared files from content store first)
+        Diff diff = manifest == null ? null : manifest.toDiff(remoteHDirHolder.object, localDir, matcher);
+        if (diff == null) {
+            diff = remoteHDirHolder.object.diff(localDir, matcher);
+        }
+        store = diff.mismatch.isEmpty() ? null : ContentStore.open(dir.toAbsolutePath().getParent());
+        if (store != null && linkFromStore(diff.mismatch, dir, new LinkedList<>()) > 0) {
+            diff = remoteHDirHolder.object.diff(localDir, matcher);
+        }
+        totalDownloaded.set(0L);
         totalSize = diff.mismatch.size();
         boolean compress = input.readBoolean();
 
-        // Build actions queue
-        Queue<Action> queue = new LinkedList<>();
-        fillActionsQueue(queue, diff.mismatch);
-        queue.add(Action.FINISH);
+        // Split files between connections by size
+        int connections = (int) Math.max(Math.min(CONNECTIONS, countFiles(diff.mismatch)), 1L);
+        Map<HashedEntry, Integer> partitions = connections > 1 ? partition(diff.mismatch, connections) : null;
+        List<Queue<Action>> queues = new ArrayList<>(connections);
+        for (int i = 0; i < connections; i++) {
+            Queue<Action> queue = new LinkedList<>();
+            fillActionsQueue(queue, diff.mismatch, dir, partitions, i);
+            queues.add(queue);
+        }
+
+        // Start additional connections
+        startTime = Instant.now();
+        List<PartitionRequest> requests = new ArrayList<>(queues.size() - 1);
+        try {
+            for (Queue<Action> queue : queues.subList(1, queues.size())) {
+                PartitionRequest request = new PartitionRequest(queue, remoteHDirHolder);
+                CommonHelper.newThread("Update Thread", true, request::run).start();
+                requests.add(request);
+            }
+
+            // Download own partition, take over rejected ones
+            Queue<Action> queue = queues.get(0);
+            for (PartitionRequest request : requests) {
+                if (!getResult(request.accepted)) {
+                    queue.addAll(request.queue);
+                }
+            }
+            queue.add(Action.FINISH);
+            performActions(input, output, compress, queue);
+        } finally {
+            // Wait for all connections, so retry won't race with them
+            for (PartitionRequest request : requests) {
+                try {
+                    request.done.get();
+                } catch (ExecutionException ignored) {
+                    // Will be rethrown below
+                }
+            }
+        }
+        for (PartitionRequest request : requests) {
+            getResult(request.done);
+        }
+
+        // Write update completed packet
+        deleteExtraDir(dir, diff.extra, diff.extra.flag);
+        return remoteHDirHolder;
+    }
 
+    @LauncherAPI
+    public void setStateCallback(Callback callback) {
+        stateCallback = callback;
+    }
+
+    private void performActions(HInput input, HOutput output, boolean compress, Queue<Action> queue) throws IOException, InterruptedException {
         // noinspection IOResourceOpenedButNotSafelyClosed
         InputStream fileInput = compress ? new InflaterInputStream(input.stream, IOHelper.newInflater(), IOHelper.BUFFER_SIZE) : input.stream;
+        if (STREAMING) {
+            streamActions(output, fileInput, queue);
+            return;
+        }
 
         // Download missing first
         // (otherwise it will cause mustdie indexing bug)
-        startTime = Instant.now();
         Path currentDir = dir;
         Action[] actionsSlice = new Action[MAX_QUEUE_SIZE];
         while (!queue.isEmpty()) {
@@ -119,38 +288,45 @@ public final class UpdateRequest extends Request<SignedObjectHolder<HashedDir>>
 
             // Perform actions
             for (int i = 0; i < length; i++) {
-                Action action = actionsSlice[i];
-                switch (action.type) {
-                    case CD:
-                        currentDir = currentDir.resolve(action.name);
-                        Files.createDirectories(currentDir);
-                        break;
-                    case GET:
-                        Path targetFile = currentDir.resolve(action.name);
-                        if (fileInput.read() != 0xFF) {
-                            throw new IOException("Serverside cached size mismath for file " + action.name);
-                        }
-                        downloadFile(targetFile, (HashedFile) action.entry, fileInput);
-                        break;
-                    case CD_BACK:
-                        currentDir = currentDir.getParent();
-                        break;
-                    case FINISH:
-                        break;
-                    default:
-                        throw new AssertionError(String.format("Unsupported action type: '%s'", action.type.name()));
-                }
+                currentDir = performAction(actionsSlice[i], currentDir, fileInput);
             }
         }
+    }
 
-        // Write update completed packet
-        deleteExtraDir(dir, diff.extra, diff.extra.flag);
-        return remoteHDirHolder;
+    private Path performAction(Action action, Path currentDir, InputStream fileInput) throws IOException {
+        switch (action.type) {
+            case CD:
+                Path subDir = currentDir.resolve(action.name);
+                Files.createDirectories(subDir);
+                return subDir;
+            case GET:
+            case GET_FROM:
+                Path targetFile = currentDir.resolve(action.name);
+                if (fileInput.read() != 0xFF) {
+                    throw new IOException("Serverside cached size mismath for file " + action.name);
+                }
+                downloadFile(targetFile, (HashedFile) action.entry, action.offset, fileInput);
+                return currentDir;
+            case DELTA:
+                Path deltaFile = currentDir.resolve(action.name);
+                if (fileInput.read() != 0xFF) {
+                    throw new IOException("Serverside cached size mismath for file " + action.name);
+                }
+                downloadDelta(deltaFile, (HashedFile) action.entry, action.signature, fileInput);
+                return currentDir;
+            case CD_BACK:
+                return currentDir.getParent();
+            case FINISH:
+                return currentDir;
+            default:
+                throw new AssertionError(String.format("Unsupported action type: '%s'", action.type.name()));
+        }
     }
 
-    @LauncherAPI
-    public void setStateCallback(Callback callback) {
-        stateCallback = callback;
+    private void addToStore(Path file, HashedFile hFile) {
+        if (store != null && isShared(toList(dir.relativize(file)))) {
+            store.add(file, hFile);
+        }
     }
 
     private void deleteExtraDir(Path subDir, HashedDir subHDir, boolean flag) throws IOException {
@@ -164,7 +340,7 @@ public final class UpdateRequest extends Request<SignedObjectHolder<HashedDir>>
             switch (entryType) {
                 case FILE:
                     updateState(IOHelper.toString(path), 0, 0);
-                    Files.delete(path);
+                    Files.deleteIfExists(path); // Partial files are already moved
                     break;
                 case DIR:
                     deleteExtraDir(path, (HashedDir) entry, flag || entry.flag);
@@ -181,14 +357,19 @@ public final class UpdateRequest extends Request<SignedObjectHolder<HashedDir>>
         }
     }
 
-    private void downloadFile(Path file, HashedFile hFile, InputStream input) throws IOException {
+    private void downloadFile(Path file, HashedFile hFile, long offset, InputStream input) throws IOException {
         String filePath = IOHelper.toString(dir.relativize(file));
-        updateState(filePath, 0L, hFile.size);
+        updateState(filePath, offset, hFile.size);
 
-        // Start file update
-        MessageDigest digest = this.digest ? SecurityHelper.newDigest(DigestAlgorithm.MD5) : null;
-        try (OutputStream fileOutput = IOHelper.newOutput(file)) {
-            long downloaded = 0L;
+        // Start file update (resumed prefix is trusted until digest check)
+        Path partFile = file.resolveSibling(IOHelper.getFileName(file) + PART_SUFFIX);
+        MessageDigest digest = this.digest || offset > 0L ? SecurityHelper.newDigest(DigestAlgorithm.MD5) : null;
+        if (offset > 0L) {
+            digestPrefix(partFile, offset, digest);
+        }
+        try (OutputStream fileOutput = IOHelper.newOutput(partFile, offset > 0L)) {
+            long downloaded = offset;
+            totalDownloaded.addAndGet(offset);
 
             // Download with digest update
             byte[] bytes = IOHelper.newBuffer();
@@ -207,7 +388,7 @@ public final class UpdateRequest extends Request<SignedObjectHolder<HashedDir>>
 
                 // Update state
                 downloaded += length;
-                totalDownloaded += length;
+                totalDownloaded.addAndGet(length);
                 updateState(filePath, downloaded, hFile.size);
             }
         }
@@ -216,12 +397,133 @@ public final class UpdateRequest extends Request<SignedObjectHolder<HashedDir>>
         if (digest != null) {
             byte[] digestBytes = digest.digest();
             if (!hFile.isSameDigest(digestBytes)) {
+                Files.delete(partFile);
+                if (offset > 0L) { // Probably stale partial file, retry from scratch
+                    throw new IOException(String.format("Resumed file digest mismatch: '%s'", filePath));
+                }
                 throw new SecurityException(String.format("File digest mismatch: '%s'", filePath));
             }
         }
+
+        // Complete file update
+        Files.move(partFile, file, StandardCopyOption.REPLACE_EXISTING);
+        completedFiles.put(dir.relativize(file), hFile);
+        if (digest != null) { // Share only verified files
+            addToStore(file, hFile);
+        }
     }
 
-    private static void fillActionsQueue(Queue<Action> queue, HashedDir mismatch) {
+    private void downloadDelta(Path file, HashedFile hFile, DeltaSignature signature, InputStream input) throws IOException {
+        String filePath = IOHelper.toString(dir.relativize(file));
+        updateState(filePath, 0L, hFile.size);
+
+        // Rebuild file from local blocks and remote literals
+        Path tempFile = file.resolveSibling(IOHelper.getFileName(file) + DELTA_SUFFIX);
+        MessageDigest digest = SecurityHelper.newDigest(DigestAlgorithm.MD5); // Always verify rebuilt file
+        HInput deltaInput = new HInput(input);
+        try {
+            try (FileChannel localChannel = FileChannel.open(file, StandardOpenOption.READ);
+                OutputStream fileOutput = IOHelper.newOutput(tempFile)) {
+                long downloaded = 0L;
+                byte[] bytes = IOHelper.newBuffer();
+                ByteBuffer buffer = ByteBuffer.wrap(bytes);
+                for (int op = deltaInput.readUnsignedByte(); op != DeltaSignature.OP_END; op = deltaInput.readUnsignedByte()) {
+                    long position;
+                    long length;
+                    switch (op) {
+                        case DeltaSignature.OP_COPY:
+                            int block = deltaInput.readVarInt();
+                            int count = deltaInput.readVarInt();
+                            if (block < 0 || count <= 0 || block > signature.getBlockCount() - count) {
+                                throw new IOException(String.format("Invalid delta blocks: %d+%d", block, count));
+                            }
+                            position = (long) block * signature.blockSize;
+                            length = (long) count * signature.blockSize;
+                            break;
+                        case DeltaSignature.OP_LITERAL:
+                            position = -1L;
+                            length = VerifyHelper.verifyInt(deltaInput.readVarInt(), VerifyHelper.NOT_NEGATIVE, "Invalid delta literal length");
+                            break;
+                        default:
+                            throw new IOException("Unknown delta op: " + op);
+                    }
+                    if (length > hFile.size - downloaded) {
+                        throw new IOException(String.format("Delta exceeds file size: '%s'", filePath));
+                    }
+
+                    // Copy local blocks or download literal
+                    for (long done = 0L; done < length; ) {
+                        int remaining = (int) Math.min(length - done, bytes.length);
+                        int read;
+                        if (position >= 0L) {
+                            buffer.clear().limit(remaining);
+                            read = localChannel.read(buffer, position + done);
+                        } else {
+                            read = input.read(bytes, 0, remaining);
+                        }
+                        if (read < 0) {
+                            throw new EOFException(String.format("%d bytes remaining", length - done));
+                        }
+
+                        // Update file
+                        fileOutput.write(bytes, 0, read);
+                        digest.update(bytes, 0, read);
+
+                        // Update state
+                        done += read;
+                        downloaded += read;
+                        totalDownloaded.addAndGet(read);
+                        updateState(filePath, downloaded, hFile.size);
+                    }
+                }
+                if (downloaded != hFile.size) {
+                    throw new EOFException(String.format("%d bytes remaining", hFile.size - downloaded));
+                }
+            }
+
+            // Verify digest
+            if (!hFile.isSameDigest(digest.digest())) {
+                throw new SecurityException(String.format("File digest mismatch: '%s'", filePath));
+            }
+        } catch (IOException | SecurityException e) {
+            Files.deleteIfExists(tempFile);
+            throw e;
+        }
+        Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING);
+        completedFiles.put(dir.relativize(file), hFile);
+        addToStore(file, hFile);
+    }
+
+    private boolean isShared(Collection<String> path) {
+        // Verified files can't be modified by client, so it's safe to share their inode
+        return matcher == null || matcher.shouldVerify(path);
+    }
+
+    private int linkFromStore(HashedDir mismatch, Path subDir, Deque<String> path) throws IOException {
+        int linked = 0;
+        for (Entry<String, HashedEntry> mapEntry : mismatch.map().entrySet()) {
+            String name = mapEntry.getKey();
+            HashedEntry entry = mapEntry.getValue();
+            path.add(name);
+            switch (entry.getType()) {
+                case DIR:
+                    linked += linkFromStore((HashedDir) entry, subDir.resolve(name), path);
+                    break;
+                case FILE:
+                    if (isShared(path) && store.get(subDir.resolve(name), (HashedFile) entry)) {
+                        localDir = localDir.patch(new ArrayList<>(path), entry);
+                        linked++;
+                    }
+                    break;
+                default:
+                    throw new AssertionError("Unsupported hashed entry type: " + entry.getType().name());
+            }
+            path.removeLast();
+        }
+        return linked;
+    }
+
+    private void fillActionsQueue(Queue<Action> queue, HashedDir mismatch, Path subDir, Map<HashedEntry, Integer> partitions, int partition) throws IOException {
         for (Entry<String, HashedEntry> mapEntry : mismatch.map().entrySet()) {
             String name = mapEntry.getKey();
             HashedEntry entry = mapEntry.getValue();
@@ -229,10 +531,26 @@ public final class UpdateRequest extends Request<SignedObjectHolder<HashedDir>>
             switch (entryType) {
                 case DIR: // cd - get - cd ..
                     queue.add(new Action(Action.Type.CD, name, entry));
-                    fillActionsQueue(queue, (HashedDir) entry);
+                    fillActionsQueue(queue, (HashedDir) entry, subDir.resolve(name), partitions, partition);
                     queue.add(Action.CD_BACK);
                     break;
-                case FILE: // get
+                case FILE: // resume, delta (if local file is big enough) or get
+                    if (partitions != null && partitions.get(entry) != partition) {
+                        break; // Downloaded by another connection
+                    }
+                    Path file = subDir.resolve(name);
+                    HashedFile hFile = (HashedFile) entry;
+                    Path partFile = subDir.resolve(name + PART_SUFFIX);
+                    long partSize = IOHelper.isFile(partFile) ? IOHelper.readAttributes(partFile).size() : 0L;
+                    if (partSize > 0L && partSize < hFile.size) {
+                        queue.add(new Action(Action.Type.GET_FROM, name, entry, null, partSize));
+                        break;
+                    }
+                    if (hFile.getDigest() != null && IOHelper.isFile(file) &&
+                        DeltaSignature.isApplicable(IOHelper.readAttributes(file).size(), hFile.size)) {
+                        queue.add(new Action(Action.Type.DELTA, name, entry, new DeltaSignature(file)));
+                        break;
+                    }
                     queue.add(new Action(Action.Type.GET, name, entry));
                     break;
                 default:
@@ -241,44 +559,257 @@ public final class UpdateRequest extends Request<SignedObjectHolder<HashedDir>>
         }
     }
 
-    private void updateState(String filePath, long fileDownloaded, long fileSize) {
+    private static void digestPrefix(Path file, long length, MessageDigest digest) throws IOException {
+        try (InputStream fileInput = IOHelper.newInput(file)) {
+            byte[] bytes = IOHelper.newBuffer();
+            for (long done = 0L; done < length; ) {
+                int read = fileInput.read(bytes, 0, (int) Math.min(length - done, bytes.length));
+                if (read < 0) {
+                    throw new EOFException(String.format("Partial file was truncated: '%s'", file));
+                }
+                digest.update(bytes, 0, read);
+                done += read;
+            }
+        }
+    }
+
+    private static void writeCachedHash(HOutput output, byte[] hash, boolean verified) throws IOException {
+        output.writeBoolean(hash != null);
+        if (hash != null) {
+            output.writeByteArray(hash, -HashedDir.HASH_ALGO.bytes);
+            output.writeBoolean(verified);
+        }
+    }
+
+    private static void writeSubtrees(HOutput output, Map<String, HashedDir> subtrees) throws IOException {
+        int count = Math.min(subtrees.size(), MAX_KNOWN_SUBTREES);
+        output.writeLength(count, MAX_KNOWN_SUBTREES);
+
+        // Write hashes (extra subtrees won't be stubbed, that's fine)
+        Iterator<HashedDir> iterator = subtrees.values().iterator();
+        for (int i = 0; i < count; i++) {
+            output.writeByteArray(iterator.next().getHash(), -HashedDir.HASH_ALGO.bytes);
+        }
+    }
+
+    private static long countFiles(HashedDir hdir) {
+        long count = 0L;
+        for (HashedEntry entry : hdir.map().values()) {
+            count += entry.getType() == HashedEntry.Type.DIR ? countFiles((HashedDir) entry) : 1L;
+        }
+        return count;
+    }
+
+    private static void collectFiles(HashedDir hdir, List<HashedEntry> files) {
+        for (HashedEntry entry : hdir.map().values()) {
+            if (entry.getType() == HashedEntry.Type.DIR) {
+                collectFiles((HashedDir) entry, files);
+            } else {
+                files.add(entry);
+            }
+        }
+    }
+
+    private static <T> T getResult(Future<T> future) throws IOException, InterruptedException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IOException("Update connection failed", cause);
+        }
+    }
+
+    private static Map<HashedEntry, Integer> partition(HashedDir mismatch, int count) {
+        List<HashedEntry> files = new ArrayList<>(64);
+        collectFiles(mismatch, files);
+        files.sort(Comparator.comparingLong(HashedEntry::size).reversed());
+
+        // Greedy: biggest files first, each to the least loaded partition
+        long[] loads = new long[count];
+        Map<HashedEntry, Integer> partitions = new IdentityHashMap<>(files.size());
+        for (HashedEntry file : files) {
+            int min = 0;
+            for (int i = 1; i < count; i++) {
+                if (loads[i] < loads[min]) {
+                    min = i;
+                }
+            }
+            loads[min] += file.size();
+            partitions.put(file, min);
+        }
+        return partitions;
+    }
+
+    private static List<String> toList(Path path) {
+        List<String> list = new ArrayList<>(path.getNameCount());
+        for (Path name : path) {
+            list.add(IOHelper.getFileName(name));
+        }
+        return list;
+    }
+
+    private void streamActions(HOutput output, InputStream fileInput, Queue<Action> queue) throws IOException, InterruptedException {
+        output.writeLength(1, MAX_QUEUE_SIZE);
+        Action.STREAM.write(output);
+
+        // Write actions in background, limited by credits
+        List<Action> actions = new ArrayList<>(queue);
+        queue.clear();
+        Semaphore credits = new Semaphore(MAX_IN_FLIGHT_ACTIONS);
+        FutureTask<Void> writer = new FutureTask<>(() -> {
+            for (Action action : actions) {
+                if (!credits.tryAcquire()) {
+                    output.flush(); // Let server work while we're waiting
+                    credits.acquire();
+                }
+                action.write(output);
+            }
+            output.flush();
+            return null;
+        });
+        Thread writerThread = CommonHelper.newThread("Update Actions Thread", true, writer);
+        writerThread.start();
+
+        // Perform actions as file data arrives, returning credits
+        boolean completed = false;
+        try {
+            Path currentDir = dir;
+            for (Action action : actions) {
+                currentDir = performAction(action, currentDir, fileInput);
+                credits.release();
+            }
+            completed = true;
+        } finally {
+            if (!completed) {
+                writerThread.interrupt(); // Socket will be closed by caller
+            }
+        }
+        getResult(writer);
+    }
+
+    private synchronized void updateState(String filePath, long fileDownloaded, long fileSize) {
         if (stateCallback != null) {
             stateCallback.call(new State(filePath, fileDownloaded, fileSize,
-                totalDownloaded, totalSize, Duration.between(startTime, Instant.now())));
+                totalDownloaded.get(), totalSize, Duration.between(startTime, Instant.now())));
+        }
+    }
+
+    private final class PartitionRequest extends Request<Void> {
+        private final Queue<Action> queue;
+        private final byte[] hdirHash;
+        private final CompletableFuture<Boolean> accepted = new CompletableFuture<>();
+        private final CompletableFuture<Void> done = new CompletableFuture<>();
+
+        private PartitionRequest(Queue<Action> queue, SignedObjectHolder<HashedDir> hdir) {
+            super(UpdateRequest.this.config);
+            this.queue = queue;
+            hdirHash = hdir.object.getHash();
+        }
+
+        @Override
+        public Type getType() {
+            return Type.UPDATE;
+        }
+
+        @Override
+        protected Void requestDo(HInput input, HOutput output) throws IOException, SignatureException, InterruptedException {
+            output.writeString(dirName, 255);
+            output.writeBoolean(true); // Partition connection (limited per client IP)
+            writeCachedHash(output, hdirHash, false);
+            output.flush();
+            try {
+                readError(input);
+            } catch (RequestException e) {
+                accepted.complete(false); // Connection limit etc, partition will be downloaded by main connection
+                return null;
+            }
+
+            // Verify we're updating same dir version
+            if (!input.readBoolean()) {
+                throw new IOException("Update dir was changed during update");
+            }
+            boolean compress = input.readBoolean();
+            accepted.complete(true);
+
+            // Download partition
+            queue.add(Action.FINISH);
+            performActions(input, output, compress, queue);
+            return null;
+        }
+
+        private void run() {
+            try {
+                request();
+                done.complete(null);
+            } catch (Throwable exc) {
+                if (accepted.complete(false)) { // Failed to connect, partition will be downloaded by main connection
+                    LogHelper.warning("Can't open additional update connection: %s", exc);
+                    done.complete(null);
+                    return;
+                }
+                done.completeExceptionally(exc);
+            }
         }
     }
 
     public static final class Action extends StreamObject {
         public static final Action CD_BACK = new Action(Type.CD_BACK, null, null);
         public static final Action FINISH = new Action(Type.FINISH, null, null);
+        public static final Action STREAM = new Action(Type.STREAM, null, null);
 
         // Instance
         public final Type type;
         public final String name;
         public final HashedEntry entry;
+        public final DeltaSignature signature;
+        public final long offset;
 
         public Action(Type type, String name, HashedEntry entry) {
+            this(type, name, entry, null);
+        }
+
+        public Action(Type type, String name, HashedEntry entry, DeltaSignature signature) {
+            this(type, name, entry, signature, 0L);
+        }
+
+        public Action(Type type, String name, HashedEntry entry, DeltaSignature signature, long offset) {
             this.type = type;
             this.name = name;
             this.entry = entry;
+            this.signature = signature;
+            this.offset = offset;
         }
 
         public Action(HInput input) throws IOException {
             type = Type.read(input);
-            name = type == Type.CD || type == Type.GET ? IOHelper.verifyFileName(input.readString(255)) : null;
+            name = type.hasName() ? IOHelper.verifyFileName(input.readString(255)) : null;
             entry = null;
+            signature = type == Type.DELTA ? new DeltaSignature(input) : null;
+            offset = type == Type.GET_FROM ? input.readVarLong() : 0L;
         }
 
         @Override
         public void write(HOutput output) throws IOException {
             EnumSerializer.write(output, type);
-            if (type == Type.CD || type == Type.GET) {
+            if (type.hasName()) {
                 output.writeString(name, 255);
             }
+            if (type == Type.DELTA) {
+                signature.write(output);
+            }
+            if (type == Type.GET_FROM) {
+                output.writeVarLong(offset);
+            }
         }
 
         public enum Type implements Itf {
-            CD(1), CD_BACK(2), GET(3), FINISH(255);
+            CD(1), CD_BACK(2), GET(3), DELTA(4), GET_FROM(5), STREAM(6), FINISH(255);
             private static final EnumSerializer<Type> SERIALIZER = new EnumSerializer<>(Type.class);
             private final int n;
 
@@ -291,6 +822,10 @@ public final class UpdateRequest extends Request<SignedObjectHolder<HashedDir>>
                 return n;
             }
 
+            public boolean hasName() {
+                return this == CD || this == GET || this == DELTA || this == GET_FROM;
+            }
+
             public static Type read(HInput input) throws IOException {
                 return SERIALIZER.read(input);
             }
@@ -5,6 +5,7 @@ import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.math.BigInteger;
+import java.nio.ByteBuffer;
 import java.util.Objects;
 import java.util.UUID;
 
@@ -13,6 +14,7 @@ import launcher.helper.IOHelper;
 
 public final class HInput implements AutoCloseable {
     @LauncherAPI public final InputStream stream;
+    private final ByteBuffer buffer = ByteBuffer.allocate(Long.BYTES * 2);
 
     @LauncherAPI
     public HInput(InputStream stream) {
@@ -61,7 +63,7 @@ public final class HInput implements AutoCloseable {
 
     @LauncherAPI
     public int readInt() throws IOException {
-        return (readUnsignedByte() << 24) + (readUnsignedByte() << 16) + (readUnsignedByte() << 8) + readUnsignedByte();
+        return readBuffer(Integer.BYTES).getInt(0);
     }
 
     @LauncherAPI
@@ -74,12 +76,12 @@ public final class HInput implements AutoCloseable {
 
     @LauncherAPI
     public long readLong() throws IOException {
-        return (long) readInt() << 32 | readInt() & 0xFFFFFFFFL;
+        return readBuffer(Long.BYTES).getLong(0);
     }
 
     @LauncherAPI
     public short readShort() throws IOException {
-        return (short) ((readUnsignedByte() << 8) + readUnsignedByte());
+        return readBuffer(Short.BYTES).getShort(0);
     }
 
     @LauncherAPI
@@ -89,7 +91,8 @@ public final class HInput implements AutoCloseable {
 
     @LauncherAPI
     public UUID readUUID() throws IOException {
-        return new UUID(readLong(), readLong());
+        ByteBuffer buffer = readBuffer(Long.BYTES * 2);
+        return new UUID(buffer.getLong(0), buffer.getLong(Long.BYTES));
     }
 
     @LauncherAPI
@@ -135,4 +138,16 @@ public final class HInput implements AutoCloseable {
         }
         throw new IOException("VarLong too big");
     }
+
+    private ByteBuffer readBuffer(int length) throws IOException {
+        byte[] bytes = buffer.array();
+        for (int offset = 0; offset < length; ) {
+            int read = stream.read(bytes, offset, length - offset);
+            if (read < 0) {
+                throw new EOFException(String.format("%d bytes remaining", length - offset));
+            }
+            offset += read;
+        }
+        return buffer;
+    }
 }
@@ -4,6 +4,7 @@ import java.io.Flushable;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.math.BigInteger;
+import java.nio.ByteBuffer;
 import java.util.Objects;
 import java.util.UUID;
 
@@ -12,6 +13,7 @@ import launcher.helper.IOHelper;
 
 public final class HOutput implements AutoCloseable, Flushable {
     @LauncherAPI public final OutputStream stream;
+    private final ByteBuffer buffer = ByteBuffer.allocate(Long.BYTES * 2);
 
     @LauncherAPI
     public HOutput(OutputStream stream) {
@@ -51,10 +53,8 @@ public final class HOutput implements AutoCloseable, Flushable {
 
     @LauncherAPI
     public void writeInt(int i) throws IOException {
-        writeUnsignedByte(i >>> 24 & 0xFF);
-        writeUnsignedByte(i >>> 16 & 0xFF);
-        writeUnsignedByte(i >>> 8 & 0xFF);
-        writeUnsignedByte(i & 0xFF);
+        buffer.putInt(0, i);
+        writeBuffer(Integer.BYTES);
     }
 
     @LauncherAPI
@@ -67,14 +67,14 @@ public final class HOutput implements AutoCloseable, Flushable {
 
     @LauncherAPI
     public void writeLong(long l) throws IOException {
-        writeInt((int) (l >> 32));
-        writeInt((int) l);
+        buffer.putLong(0, l);
+        writeBuffer(Long.BYTES);
     }
 
     @LauncherAPI
     public void writeShort(short s) throws IOException {
-        writeUnsignedByte(s >>> 8 & 0xFF);
-        writeUnsignedByte(s & 0xFF);
+        buffer.putShort(0, s);
+        writeBuffer(Short.BYTES);
     }
 
     @LauncherAPI
@@ -84,8 +84,9 @@ public final class HOutput implements AutoCloseable, Flushable {
 
     @LauncherAPI
     public void writeUUID(UUID uuid) throws IOException {
-        writeLong(uuid.getMostSignificantBits());
-        writeLong(uuid.getLeastSignificantBits());
+        buffer.putLong(0, uuid.getMostSignificantBits());
+        buffer.putLong(Long.BYTES, uuid.getLeastSignificantBits());
+        writeBuffer(Long.BYTES * 2);
     }
 
     @LauncherAPI
@@ -95,19 +96,27 @@ public final class HOutput implements AutoCloseable, Flushable {
 
     @LauncherAPI
     public void writeVarInt(int i) throws IOException {
+        int length = 0;
         while ((i & ~0x7FL) != 0) {
-            writeUnsignedByte(i & 0x7F | 0x80);
+            buffer.put(length++, (byte) (i & 0x7F | 0x80));
             i >>>= 7;
         }
-        writeUnsignedByte(i);
+        buffer.put(length++, (byte) i);
+        writeBuffer(length);
     }
 
     @LauncherAPI
     public void writeVarLong(long l) throws IOException {
+        int length = 0;
         while ((l & ~0x7FL) != 0) {
-            writeUnsignedByte((int) l & 0x7F | 0x80);
+            buffer.put(length++, (byte) ((int) l & 0x7F | 0x80));
             l >>>= 7;
         }
-        writeUnsignedByte((int) l);
+        buffer.put(length++, (byte) l);
+        writeBuffer(length);
+    }
+
+    private void writeBuffer(int length) throws IOException {
+        stream.write(buffer.array(), 0, length);
     }
 }
@@ -18,6 +18,12 @@ public final class SignedObjectHolder<O extends StreamObject> extends SignedByte
         object = newInstance(adapter);
     }
 
+    @LauncherAPI
+    public SignedObjectHolder(byte[] bytes, byte[] sign, RSAPublicKey publicKey, Adapter<O> adapter) throws IOException, SignatureException {
+        super(bytes, sign, publicKey);
+        object = newInstance(adapter);
+    }
+
     @LauncherAPI
     public SignedObjectHolder(O object, RSAPrivateKey privateKey) throws IOException {
         super(object.write(), privateKey);